@@ -55,37 +55,36 @@ public class AbstractAI {
    * Instead, in this method, we only consider moves within a radius of the last move made by
    * player. In addition, since the objective of a move is either blocking an opponent or expanding
    * one's streak, we only consider potential moves that are adjacent to another previously-made
-   * moves. Disconnected potential moves are therefore not added to actionSet.
+   * moves. Disconnected potential moves are therefore not added to actionSet. These moves are
+   * read from the board's candidate frontier instead of checking every position in the radius.
    *
    * @param lastMove :   last move made in the game
    * @return list of possible moves to make
    */
   public List<int[]> getActionSet(GameBoard board, int[] lastMove, int radius) {
-    BoardSubset search = new BoardSubset(lastMove, this.boardDimension, radius);
-    List<int[]> actionSet = new ArrayList<int[]>();
-
-    for (int row = search.getTopRow(); row <= search.getBotRow(); row++) {
-      for (int col = search.getLeftCol(); col <= search.getRightCol(); col++) {
-        if (board.isEmpty(row, col) && !board.isDisconnected(row, col)) {
-          actionSet.add(new int[]{row, col});
-        }
-      }
-    }
-    return actionSet;
+    return toMoveList(board, new BoardSubset(lastMove, this.boardDimension, radius));
   }
 
   public List<int[]> getActionSet(GameBoard board) {
-    List<int[]> actionSet = new ArrayList<int[]>();
+    return toMoveList(board, new BoardSubset(0, board.getBoardDimension() - 1, 0,
+            board.getBoardDimension() - 1));
+  }
 
-    for (int row = 0; row < board.getBoardDimension(); row++) {
-      for (int col = 0; col < board.getBoardDimension(); col++) {
-        if (board.isEmpty(row, col) && !board.isDisconnected(row, col)) {
-          actionSet.add(new int[]{row, col});
-        }
-      }
+  /**
+   * List the candidate moves of a board within a board subset, in row-major order.
+   *
+   * @param board  board state
+   * @param search board subset to search within
+   * @return list of moves
+   */
+  private static List<int[]> toMoveList(GameBoard board, BoardSubset search) {
+    int dimension = board.getBoardDimension();
+    int[] cells = new int[board.getFrontierSize()];
+    int count = board.getCandidateCells(search, cells);
+    List<int[]> actionSet = new ArrayList<int[]>(count);
+    for (int i = 0; i < count; i++) {
+      actionSet.add(new int[]{cells[i] / dimension, cells[i] % dimension});
     }
     return actionSet;
   }
-
-
 }
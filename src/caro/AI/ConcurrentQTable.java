@@ -0,0 +1,220 @@
+package caro.AI;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Q-table that several training threads can read and update at once. Pairs are spread over
+ * stripes by the high bits of their state hash, and each stripe is an ordinary QTable guarded by
+ * its own lock, so threads only wait for each other when they touch states in the same stripe.
+ * All moves of a state fall in the same stripe, so getMax() takes a single lock.
+ *
+ * <p>Every call is atomic, but a Q-learning update reads a value and then writes it back, and two
+ * threads updating the same pair at the same moment may lose one of the updates. Training
+ * tolerates that as it tolerates any other noise in its rewards.
+ */
+public class ConcurrentQTable implements QValues {
+  public static final int DEFAULT_STRIPES = 64;
+  private final QTable[] stripes;
+  private final StampedLock[] locks;
+  private final int stripeMask;
+
+  /**
+   * Constructor with default capacity and number of stripes.
+   */
+  public ConcurrentQTable() {
+    this(QTable.DEFAULT_CAPACITY, DEFAULT_STRIPES);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param capacity total number of slots to start with, shared evenly by the stripes
+   * @param stripes  number of stripes, a power of two
+   * @throws IllegalArgumentException if capacity is out of range, or stripes is not a power of two
+   *                                  or larger than capacity
+   */
+  public ConcurrentQTable(int capacity, int stripes) throws IllegalArgumentException {
+    if ((stripes <= 0) || (Integer.bitCount(stripes) != 1) || (stripes > capacity)) {
+      throw new IllegalArgumentException("Stripes must be a power of two, at most capacity.");
+    }
+    this.stripes = new QTable[stripes];
+    this.locks = new StampedLock[stripes];
+    for (int i = 0; i < stripes; i++) {
+      this.stripes[i] = new QTable((capacity + stripes - 1) / stripes);
+      this.locks[i] = new StampedLock();
+    }
+    this.stripeMask = stripes - 1;
+  }
+
+  /**
+   * Getter for number of slots.
+   *
+   * @return number of slots of all stripes together
+   */
+  @Override
+  public int getCapacity() {
+    int capacity = 0;
+    for (int i = 0; i < this.stripes.length; i++) {
+      long stamp = this.locks[i].readLock();
+      try {
+        capacity += this.stripes[i].getCapacity();
+      } finally {
+        this.locks[i].unlockRead(stamp);
+      }
+    }
+    return capacity;
+  }
+
+  /**
+   * Getter for number of state, move pairs stored. Pairs stored by other threads while the
+   * stripes are being counted may or may not be included.
+   *
+   * @return number of pairs
+   */
+  @Override
+  public int getSize() {
+    int size = 0;
+    for (int i = 0; i < this.stripes.length; i++) {
+      long stamp = this.locks[i].readLock();
+      try {
+        size += this.stripes[i].getSize();
+      } finally {
+        this.locks[i].unlockRead(stamp);
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Get the value of a state, move pair.
+   *
+   * @param stateHash hash of board state
+   * @param move      move packed with TranspositionTable.packMove()
+   * @return value stored for the pair, 0 if there is none
+   */
+  @Override
+  public float get(long stateHash, int move) {
+    int stripe = this.stripe(stateHash);
+    long stamp = this.locks[stripe].readLock();
+    try {
+      return this.stripes[stripe].get(stateHash, move);
+    } finally {
+      this.locks[stripe].unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Get the largest value of several moves made in one state.
+   *
+   * @param stateHash hash of board state
+   * @param moves     moves packed with TranspositionTable.packMove()
+   * @param count     number of moves, from the start of moves
+   * @return largest value, counting 0 for a move with no value stored; negative infinity if count
+   *         is 0
+   */
+  @Override
+  public float getMax(long stateHash, int[] moves, int count) {
+    int stripe = this.stripe(stateHash);
+    long stamp = this.locks[stripe].readLock();
+    try {
+      return this.stripes[stripe].getMax(stateHash, moves, count);
+    } finally {
+      this.locks[stripe].unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Check whether a value is stored for a state, move pair.
+   *
+   * @param stateHash hash of board state
+   * @param move      move packed with TranspositionTable.packMove()
+   * @return true if a value is stored, false if not
+   */
+  @Override
+  public boolean contains(long stateHash, int move) {
+    int stripe = this.stripe(stateHash);
+    long stamp = this.locks[stripe].readLock();
+    try {
+      return this.stripes[stripe].contains(stateHash, move);
+    } finally {
+      this.locks[stripe].unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Store the value of a state, move pair, replacing any value stored for it before.
+   *
+   * @param stateHash hash of board state
+   * @param move      move packed with TranspositionTable.packMove()
+   * @param value     value
+   * @throws IllegalStateException if the pair's stripe is full and cannot grow any further
+   */
+  @Override
+  public void put(long stateHash, int move, float value) throws IllegalStateException {
+    int stripe = this.stripe(stateHash);
+    long stamp = this.locks[stripe].writeLock();
+    try {
+      this.stripes[stripe].put(stateHash, move, value);
+    } finally {
+      this.locks[stripe].unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Remove all pairs.
+   */
+  @Override
+  public void clear() {
+    for (int i = 0; i < this.stripes.length; i++) {
+      long stamp = this.locks[i].writeLock();
+      try {
+        this.stripes[i].clear();
+      } finally {
+        this.locks[i].unlockWrite(stamp);
+      }
+    }
+  }
+
+  /**
+   * Copy all pairs into a single, unsynchronized table.
+   *
+   * @return table holding every pair of this table
+   */
+  public QTable toQTable() {
+    QTable table = new QTable(this.getCapacity());
+    for (int i = 0; i < this.stripes.length; i++) {
+      long stamp = this.locks[i].readLock();
+      try {
+        table.putAll(this.stripes[i]);
+      } finally {
+        this.locks[i].unlockRead(stamp);
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Save the table to a snapshot file, replacing the file if it exists. The snapshot holds a
+   * single table, and loads as one.
+   *
+   * @param file path of snapshot file
+   * @throws IOException if the file cannot be written
+   */
+  @Override
+  public void save(Path file) throws IOException {
+    this.toQTable().save(file);
+  }
+
+  /**
+   * Stripe holding the pairs of a state. Stripes are picked by the high half of the state hash,
+   * while slots inside a stripe are picked by the low half.
+   *
+   * @param stateHash hash of board state
+   * @return stripe index
+   */
+  private int stripe(long stateHash) {
+    return (int) (stateHash >>> 32) & this.stripeMask;
+  }
+}
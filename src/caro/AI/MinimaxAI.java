@@ -2,24 +2,82 @@ package caro.AI;
 
 import caro.Game;
 import caro.Player;
+import caro.board.BoardSubset;
 import caro.board.GameBoard;
+import caro.board.ThreatIndex;
 import caro.streak.StreakList;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * Class for MinimaxAI object, using minimax algorithm to make game moves.
  */
-public class MinimaxAI extends AbstractAI{
+public class MinimaxAI extends AbstractAI implements AutoCloseable {
   public static final double unblockedFourUtility = 1.0, blockedFourUtility = 0.5;
   public static final double unblockedThreeUtility = 0.5, blockedThreeUtility = 0.1;
   public static final double unblockedTwoUtility = 0.04, blockedTwoUtility = 0.01;
   public static final double utilityCap = 0.9;
+  public static final double winUtility = 4.0;
+  private static final int HISTORY_MAX = 1 << 24;
+  public static final int DEFAULT_QUIESCENCE_DEPTH = 2;
+  public static final double DEFAULT_ASPIRATION_WINDOW = 0.1;
+  private static final int ASPIRATION_GROWTH = 4;
+  public static final int DEFAULT_LATE_MOVE_COUNT = 3, DEFAULT_LATE_MOVE_REDUCTION = 1;
+
+  /**
+   * How search work is spread over threads.
+   */
+  public enum ParallelMode {
+    /** search on the calling thread only. */
+    SEQUENTIAL,
+    /** search each move at the root as a separate task on a thread pool. */
+    ROOT_SPLIT,
+    /** search the whole root on every thread, sharing results through the transposition table. */
+    LAZY_SMP
+  }
+
   private int boardDimension;
   private Player aiPlayer, opponent;
   private int searchRadius;
   private int searchDepth;
+  // kept for the whole game, so positions searched for earlier moves are reused later
+  private final TranspositionTable table;
+  // depth at which the current search stops, searchDepth unless iterative deepening is running
+  private int depthLimit;
+  // System.nanoTime() by which a time-limited search has to stop
+  private long deadline;
+  private boolean timeLimited;
+  private volatile boolean searchAborted;
+  private double rootUtility;
+  // moves tied as optimal by the last root search that finished
+  private List<int[]> optimalMoves = new ArrayList<int[]>();
+  private long nodeCount;
+  private ParallelMode parallelMode = ParallelMode.SEQUENTIAL;
+  private ForkJoinPool pool;
+  private int threads = 1;
+  private volatile boolean helpersStopped;
+  // cutoff counts per cell, aged between moves; parallel searches order moves by copies of it
+  private int[] history;
+  // search state of the calling thread, kept across the iterations of one getOptimalMove() call
+  private Searcher mainSearcher;
+  // looks for a forced win by threats before searching, null if turned off
+  private ThreatSolver threatSolver = new ThreatSolver();
+  // plies of threat moves searched past the depth limit, 0 to evaluate the limit directly
+  private int quiescenceDepth = DEFAULT_QUIESCENCE_DEPTH;
+  // distance of the aspiration window from the utility of the last iteration, 0 to search the
+  // full window
+  private double aspirationWindow = DEFAULT_ASPIRATION_WINDOW;
+  // moves searched at full depth in every board state, and plies taken off the moves after them
+  private int lateMoveCount = DEFAULT_LATE_MOVE_COUNT;
+  private int lateMoveReduction = DEFAULT_LATE_MOVE_REDUCTION;
 
   /**
    * Constructor.
@@ -40,7 +98,9 @@ public class MinimaxAI extends AbstractAI{
     this.aiPlayer = aiPlayer;
     this.opponent = opponent;
     this.searchDepth = 2;
+    this.depthLimit = this.searchDepth;
     this.searchRadius = (int) Math.ceil(boardDimension * 0.5) + 1;
+    this.table = new TranspositionTable();
   }
 
   /**
@@ -54,9 +114,141 @@ public class MinimaxAI extends AbstractAI{
    */
   public MinimaxAI(int boardDimension, Player aiPlayer, Player opponent, int searchDepth,
                    int searchRadius) throws IllegalArgumentException {
-    this(boardDimension, aiPlayer, opponent);
+    this(boardDimension, aiPlayer, opponent, searchDepth, searchRadius, new TranspositionTable());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param boardDimension dimension of board
+   * @param aiPlayer       player controlled by AI
+   * @param opponent       opponent player of aiPlayer
+   * @param searchDepth    depth of search tree for minimax
+   * @param searchRadius   search radius
+   * @param table          transposition table used to remember searched board states
+   */
+  public MinimaxAI(int boardDimension, Player aiPlayer, Player opponent, int searchDepth,
+                   int searchRadius, TranspositionTable table) throws IllegalArgumentException {
+    super(boardDimension);
+    if ((aiPlayer == null) || (opponent == null) || (table == null)) {
+      throw new IllegalArgumentException("Input object is null.");
+    }
+    if (aiPlayer == opponent) {
+      throw new IllegalArgumentException("AI Player and opponent must be different.");
+    }
+    this.aiPlayer = aiPlayer;
+    this.opponent = opponent;
     this.searchDepth = searchDepth;
+    this.depthLimit = searchDepth;
     this.searchRadius = searchRadius;
+    this.table = table;
+  }
+
+  /**
+   * Getter for transposition table.
+   *
+   * @return transposition table shared by all searches of this AI
+   */
+  public TranspositionTable getTranspositionTable() {
+    return this.table;
+  }
+
+  /**
+   * Set how search work is spread over threads. Parallel modes run on a thread pool of their own,
+   * which is kept until the mode is changed or the AI is closed.
+   *
+   * @param mode    parallel search mode
+   * @param threads number of threads used by parallel modes
+   * @throws IllegalArgumentException if mode is null or threads is not positive
+   */
+  public void setParallelSearch(ParallelMode mode, int threads) throws IllegalArgumentException {
+    if ((mode == null) || (threads <= 0)) {
+      throw new IllegalArgumentException("Parallel mode cannot be null and threads must be "
+              + "positive.");
+    }
+    if (this.pool != null) {
+      this.pool.shutdown();
+      this.pool = null;
+    }
+    this.parallelMode = mode;
+    this.threads = threads;
+    if (mode != ParallelMode.SEQUENTIAL) {
+      this.pool = new ForkJoinPool(threads);
+    }
+  }
+
+  /**
+   * Shut down the threads of a parallel search. The AI searches sequentially afterwards, until
+   * setParallelSearch() is called again. Closing an AI that searches sequentially does nothing.
+   */
+  @Override
+  public void close() {
+    if (this.pool != null) {
+      this.pool.shutdown();
+      this.pool = null;
+    }
+    this.parallelMode = ParallelMode.SEQUENTIAL;
+    this.threads = 1;
+  }
+
+  /**
+   * Set the threat-space search run before minimax. If it proves a win, its move is played
+   * without searching.
+   *
+   * @param solver threat solver, null to search without it
+   */
+  public void setThreatSolver(ThreatSolver solver) {
+    this.threatSolver = solver;
+  }
+
+  /**
+   * Set how many plies of threat moves are searched past the depth limit before a board state is
+   * evaluated.
+   *
+   * @param quiescenceDepth plies of quiescence search, 0 to evaluate at the depth limit
+   * @throws IllegalArgumentException if quiescenceDepth is negative
+   */
+  public void setQuiescenceDepth(int quiescenceDepth) throws IllegalArgumentException {
+    if (quiescenceDepth < 0) {
+      throw new IllegalArgumentException("Quiescence depth cannot be negative.");
+    }
+    this.quiescenceDepth = quiescenceDepth;
+  }
+
+  /**
+   * Set how far from the utility found by the last iteration of iterative deepening the next
+   * iteration starts looking for the utility of the root.
+   *
+   * @param aspirationWindow distance on either side of the last utility, 0 to always search the
+   *                         full window
+   * @throws IllegalArgumentException if aspirationWindow is negative or not a number
+   */
+  public void setAspirationWindow(double aspirationWindow) throws IllegalArgumentException {
+    if (!(aspirationWindow >= 0)) {
+      throw new IllegalArgumentException("Aspiration window cannot be negative.");
+    }
+    this.aspirationWindow = aspirationWindow;
+  }
+
+  /**
+   * Set how late moves are reduced. In every board state with enough depth left, moves after the
+   * first moveCount in move ordering that are not threat moves are first searched reduction plies
+   * shallower. More reduction finishes deeper searches in the same time, at the risk of missing a
+   * good late move. Search split over threads at the root does not reduce late moves, so that the
+   * moves it finds do not depend on thread scheduling.
+   *
+   * @param moveCount moves searched at full depth before reducing
+   * @param reduction plies taken off late moves, 0 to search every move at full depth
+   * @throws IllegalArgumentException if moveCount is not positive or reduction is negative
+   */
+  public void setLateMoveReductions(int moveCount, int reduction)
+          throws IllegalArgumentException {
+    if ((moveCount <= 0) || (reduction < 0)) {
+      throw new IllegalArgumentException("Late move count must be positive and reduction cannot "
+              + "be negative.");
+    }
+    this.lateMoveCount = moveCount;
+    this.lateMoveReduction = reduction;
   }
 
   /**
@@ -75,8 +267,8 @@ public class MinimaxAI extends AbstractAI{
     } else {
       double utility = 0.0;
       for (int i = maxStreak - 2; i >= 0; i--) {
-        int unblockedCount = list.getStreak(i).getUnblockedCount();
-        int blockedCount = list.getStreak(i).getCount() - unblockedCount;
+        int unblockedCount = list.getUnblockedCount(i);
+        int blockedCount = list.getCount(i) - unblockedCount;
         switch (i + 2) {
           case 2:
             utility += (unblockedCount * unblockedTwoUtility + blockedCount * blockedTwoUtility);
@@ -109,9 +301,18 @@ public class MinimaxAI extends AbstractAI{
    * @return utility
    */
   public double calculateUtilityOfBoardState(GameBoard boardState) {
-    StreakList aiStreak = boardState.checkBoardForStreaks(aiPlayer);
-    StreakList opponentStreak = boardState.checkBoardForStreaks(opponent);
+    return this.calculateUtilityOfStreaks(boardState.checkBoardForStreaks(aiPlayer),
+            boardState.checkBoardForStreaks(opponent));
+  }
 
+  /**
+   * Calculate utility value of a board state from the streaks of aiPlayer and opponent.
+   *
+   * @param aiStreak       streaks of aiPlayer
+   * @param opponentStreak streaks of opponent
+   * @return utility
+   */
+  private double calculateUtilityOfStreaks(StreakList aiStreak, StreakList opponentStreak) {
     double aiUtility = this.calculateUtility(aiStreak, false);
     double opponentUtility = this.calculateUtility(opponentStreak, true);
 
@@ -128,71 +329,781 @@ public class MinimaxAI extends AbstractAI{
   }
 
   /**
-   * Maximizer function.
-   *
-   * @param boardState    last board state
-   * @param maxUtility    max utility previously found
-   * @param lastMove      last move made
-   * @param depth         depth of minimax tree
-   * @return              return utility
+   * Search state owned by a single thread. Sequential search uses one Searcher on the caller's
+   * board; parallel searches give every task its own Searcher, board copy and copy of the history
+   * scores, and share only the transposition table.
    */
-  public double maximizer(GameBoard boardState, double maxUtility, int[] lastMove, int depth) {
-    if (boardState.checkWinningMove(lastMove)) {
-      if (boardState.returnPosition(lastMove) == aiPlayer.getSymbol()) {
-        return 4.0;
+  private class Searcher {
+    private long nodeCount;
+    private int depthLimit;
+    // helper threads of a lazy SMP search only fill the transposition table for the main search
+    private final boolean helper;
+    /* stored utilities depend on the path a board state was reached by (the action set is taken
+    around the last move), so root-split tasks, whose move selection must not depend on thread
+    scheduling, do not share results through the table */
+    private final boolean useTable;
+    /* a reduced move is searched fully only if it beats alpha, so its utility depends on the
+    window; root-split tasks, whose windows depend on thread scheduling, set this to 0 */
+    private int lateMoveReduction = MinimaxAI.this.lateMoveReduction;
+    private final TranspositionTable.Entry entry = new TranspositionTable.Entry();
+    // per-ply buffers, so that generating and ordering moves does not allocate
+    private int[][] moves = new int[0][];
+    private int[][] moveScores = new int[0][];
+    private int[][] plyMoves = new int[0][];
+    // two most recent moves per ply that caused a cutoff, as cells (row * dimension + col)
+    private int[][] killers = new int[0][];
+    // history scores this searcher orders moves by and raises on cutoffs
+    private final int[] history;
+    // streak counts of leaf positions, and StreakList views over them
+    private final int[] aiCounts = new int[StreakList.getCountsLength()];
+    private final int[] opponentCounts = new int[StreakList.getCountsLength()];
+    private final StreakList aiStreak = new StreakList(this.aiCounts);
+    private final StreakList opponentStreak = new StreakList(this.opponentCounts);
+
+    /**
+     * Constructor.
+     *
+     * @param depthLimit depth at which search stops
+     * @param helper     whether this is a lazy SMP helper, which stops when the main search ends
+     * @param useTable   whether to read and write the transposition table
+     * @param history    history scores, written to by this searcher only
+     */
+    Searcher(int depthLimit, boolean helper, boolean useTable, int[] history) {
+      this.depthLimit = depthLimit;
+      this.helper = helper;
+      this.useTable = useTable;
+      this.history = history;
+    }
+
+    /**
+     * Check whether this search has to stop.
+     *
+     * @return true if search has to stop, false if not
+     */
+    private boolean isStopped() {
+      return this.helper ? (helpersStopped || searchAborted) : isOutOfTime();
+    }
+
+    /**
+     * Calculate utility value of a board state like calculateUtilityOfBoardState(), reusing this
+     * searcher's streak counts so that evaluating a leaf does not allocate.
+     *
+     * @param boardState boardState to calculate utility from
+     * @return utility
+     */
+    private double evaluate(GameBoard boardState) {
+      Arrays.fill(this.aiCounts, 0);
+      Arrays.fill(this.opponentCounts, 0);
+      boardState.checkBoardForStreaks(aiPlayer, this.aiCounts);
+      boardState.checkBoardForStreaks(opponent, this.opponentCounts);
+      return calculateUtilityOfStreaks(this.aiStreak, this.opponentStreak);
+    }
+
+    /**
+     * Utility of a board state from the side of the player to move.
+     *
+     * @param boardState boardState to calculate utility from
+     * @param player     player to move
+     * @return utility for player
+     */
+    private double evaluate(GameBoard boardState, Player player) {
+      double utility = this.evaluate(boardState);
+      return (player == aiPlayer) ? utility : -utility;
+    }
+
+    /**
+     * Quiescence search, run instead of evaluating a board state at the depth limit. Fours and
+     * open threes about to be resolved make the evaluation unreliable, so only threat moves are
+     * searched further until the board state is quiet: fives are completed or stopped, an open
+     * three of the other player is stopped or answered with a four, and otherwise the player may
+     * keep the evaluation or try its own fours. Trying the player's own open threes as well was
+     * measured to double the nodes without avoiding more lost positions.
+     *
+     * @param boardState last board state, restored before returning
+     * @param depth      depth of minimax tree
+     * @param alpha      utility player is already guaranteed elsewhere in the tree
+     * @param beta       utility the other player is already guaranteed elsewhere in the tree
+     * @param player     player to move
+     * @param plies      plies of threat moves left to search
+     * @return utility of board state for player
+     */
+    private double quiescence(GameBoard boardState, int depth, double alpha, double beta,
+                              Player player, int plies) {
+      if (boardState.getThreatCellCount(player, ThreatIndex.FIVE_GAIN) > 0) {
+        return winUtility;
+      }
+      Player other = (player == aiPlayer) ? opponent : aiPlayer;
+      int fives = boardState.getThreatCellCount(other, ThreatIndex.FIVE_GAIN);
+      if (fives > 1) {
+        return -winUtility;
+      }
+      // a threatened player cannot keep the evaluation, it has to answer the threat
+      boolean threatened = (fives == 1)
+              || (boardState.getThreatCount(other, ThreatIndex.OPEN_THREE) > 0);
+      double standPat = this.evaluate(boardState, player);
+      if ((plies == 0) || boardState.isOutOfMoves()) {
+        return standPat;
+      }
+      double utility = standPat;
+      if (threatened) {
+        utility = Double.NEGATIVE_INFINITY;
+      } else if (utility >= beta) {
+        return utility;
+      }
+      alpha = Math.max(alpha, utility);
+
+      this.ensurePly(depth, boardState);
+      int[] cells = this.moves[depth];
+      int[] extraCells = this.moveScores[depth];
+      int count, extraCount = 0;
+      if (fives == 1) {
+        count = boardState.getThreatCells(other, ThreatIndex.FIVE_GAIN, cells);
       } else {
-        return -4.0;
+        count = boardState.getThreatCells(player, ThreatIndex.FOUR_MOVE, cells);
+        if (threatened) {
+          extraCount = boardState.getThreatCells(other, ThreatIndex.THREE_COST, extraCells);
+        }
       }
+
+      int dimension = boardState.getBoardDimension();
+      int[] newMove = this.plyMoves[depth];
+      for (int i = 0; i < count + extraCount; i++) {
+        int cell = (i < count) ? cells[i] : extraCells[i - count];
+        newMove[0] = cell / dimension;
+        newMove[1] = cell % dimension;
+        this.nodeCount++;
+        boardState.makeMove(newMove, player);
+        double moveUtility = -this.quiescence(boardState, depth + 1, -beta, -alpha, other,
+                plies - 1);
+        boardState.unmakeMove();
+        utility = Math.max(utility, moveUtility);
+        alpha = Math.max(alpha, utility);
+        if (alpha >= beta) {
+          break;
+        }
+      }
+      return (utility == Double.NEGATIVE_INFINITY) ? standPat : utility;
     }
-    if (boardState.isOutOfMoves() || (depth >= this.searchDepth)) {
-      return this.calculateUtilityOfBoardState(boardState);
+
+    /**
+     * Make sure the per-ply buffers can hold the moves of a board at depth.
+     *
+     * @param depth      depth of minimax tree
+     * @param boardState board state searched at depth
+     */
+    private void ensurePly(int depth, GameBoard boardState) {
+      if (depth >= this.moves.length) {
+        int plies = Math.max(depth + 1, this.depthLimit + 2);
+        this.moves = Arrays.copyOf(this.moves, plies);
+        this.moveScores = Arrays.copyOf(this.moveScores, plies);
+        this.plyMoves = Arrays.copyOf(this.plyMoves, plies);
+        this.killers = Arrays.copyOf(this.killers, plies);
+      }
+      int cells = boardState.getBoardDimension() * boardState.getBoardDimension();
+      if ((this.moves[depth] == null) || (this.moves[depth].length < cells)) {
+        this.moves[depth] = new int[cells];
+        this.moveScores[depth] = new int[cells];
+        this.plyMoves[depth] = new int[2];
+        this.killers[depth] = new int[]{-1, -1};
+      }
     }
 
-    double utility = Double.NEGATIVE_INFINITY;
-    List<int[]> actionSet = this.getActionSet(boardState, lastMove, this.searchRadius);
+    /**
+     * Score a move for move ordering: the best move stored in the transposition table first, then
+     * killer moves of this ply, then the rest by history score.
+     *
+     * @param cell     move as cell (row * dimension + col)
+     * @param hashCell best move from transposition table as cell, -1 if there is none
+     * @param depth    depth of minimax tree
+     * @return ordering score, higher is searched first
+     */
+    private int orderScore(int cell, int hashCell, int depth) {
+      if (cell == hashCell) {
+        return Integer.MAX_VALUE;
+      } else if (cell == this.killers[depth][0]) {
+        return Integer.MAX_VALUE - 1;
+      } else if (cell == this.killers[depth][1]) {
+        return Integer.MAX_VALUE - 2;
+      }
+      return this.history[cell];
+    }
 
-    for (int[] newMove : actionSet) {
-      utility = Math.max(utility, minimizer(boardState.getBoardState(newMove, aiPlayer),
-              utility, newMove, depth + 1));
-      if (utility > maxUtility) {
-        break;
+    /**
+     * Remember a move that caused a cutoff as killer of its ply and raise its history score.
+     *
+     * @param cell           move as cell (row * dimension + col)
+     * @param depth          depth of minimax tree
+     * @param remainingDepth depth searched below the move
+     */
+    private void recordCutoff(int cell, int depth, int remainingDepth) {
+      int[] plyKillers = this.killers[depth];
+      if (plyKillers[0] != cell) {
+        plyKillers[1] = plyKillers[0];
+        plyKillers[0] = cell;
+      }
+      // deep cutoffs are rarer and more telling than cutoffs near the leaves
+      this.history[cell] = Math.min(this.history[cell] + remainingDepth * remainingDepth,
+              HISTORY_MAX);
+    }
+
+    /**
+     * Search a move already made on the board, as one of the moves of a principal variation
+     * search. A scout search first only checks whether the move is better than alpha, using a
+     * window too narrow to hold any utility in between; most moves after the first are not, and a
+     * null-window search proves that with far fewer nodes than a full one. Only a move that beats
+     * alpha without reaching beta is searched again with the full window for its exact utility.
+     *
+     * @param boardState board state after the move, restored before returning
+     * @param move       move made
+     * @param depth      depth of minimax tree after the move
+     * @param remaining  depth left to search after the move
+     * @param alpha      utility the player who made the move is already guaranteed
+     * @param beta       utility the other player is already guaranteed
+     * @param other      player to move after the move
+     * @param scout      whether to try a null-window search first
+     * @return utility of the move for the player who made it
+     */
+    double searchChild(GameBoard boardState, int[] move, int depth, int remaining, double alpha,
+                       double beta, Player other, boolean scout) {
+      if (scout && (alpha != Double.NEGATIVE_INFINITY)) {
+        double utility = -negamax(boardState, move, depth, remaining, -Math.nextUp(alpha), -alpha,
+                other);
+        if ((utility <= alpha) || (utility >= beta) || this.isStopped()) {
+          return utility;
+        }
+      }
+      return -negamax(boardState, move, depth, remaining, -beta, -alpha, other);
+    }
+
+    /**
+     * Check whether a move is a threat move: it makes a four or an open three, or stops an open
+     * three of the other player. Threat moves are never searched at reduced depth, since their
+     * consequences only show after a few plies.
+     *
+     * @param boardState board state before the move
+     * @param move       move to check
+     * @param player     player making the move
+     * @param other      other player
+     * @return true if move is a threat move, false if not
+     */
+    private boolean isThreatMove(GameBoard boardState, int[] move, Player player, Player other) {
+      return boardState.isThreatCell(player, ThreatIndex.FOUR_MOVE, move[0], move[1])
+              || boardState.isThreatCell(player, ThreatIndex.THREE_MOVE, move[0], move[1])
+              || boardState.isThreatCell(other, ThreatIndex.THREE_COST, move[0], move[1]);
+    }
+
+    /**
+     * Negamax search with alpha-beta pruning. Utility is seen from the side of the player to
+     * move: positive if player is winning, negative if the other player is. The search only needs
+     * to find utilities inside the window (alpha, beta); a utility at or below alpha is an upper
+     * bound and a utility at or above beta is a lower bound on the real utility.
+     * Moves are searched best-first, since the earlier a good move is searched, the more of the
+     * remaining moves are pruned, and every move after the first is only scouted at first.
+     * Late moves in the ordering rarely turn out best, so quiet moves after the first
+     * lateMoveCount are searched at reduced depth, and searched fully only if they beat alpha.
+     *
+     * @param boardState     last board state, restored before returning
+     * @param lastMove       last move made
+     * @param depth          depth of minimax tree
+     * @param remainingDepth depth left to search, board state is evaluated when it reaches 0
+     * @param alpha          utility player is already guaranteed elsewhere in the tree
+     * @param beta           utility the other player is already guaranteed elsewhere in the tree
+     * @param player         player to move
+     * @return               utility of board state for player
+     */
+    double negamax(GameBoard boardState, int[] lastMove, int depth, int remainingDepth,
+                   double alpha, double beta, Player player) {
+      this.nodeCount++;
+      // a winning last move was made by the other player
+      if (boardState.checkWinningMove(lastMove)) {
+        return -winUtility;
       }
+      if (this.isStopped()) {
+        return 0;
+      }
+      int dimension = boardState.getBoardDimension();
+      long key = boardState.getHash();
+      int hashCell = -1;
+      if (this.useTable && table.probe(key, this.entry)) {
+        if (this.entry.getBestMove() != TranspositionTable.NO_MOVE) {
+          hashCell = (this.entry.getBestMove() >>> 16) * dimension
+                  + (this.entry.getBestMove() & 0xFFFF);
+        }
+        if (this.entry.getDepth() >= remainingDepth) {
+          double score = this.entry.getScore();
+          byte bound = this.entry.getBound();
+          if (bound == TranspositionTable.EXACT) {
+            return score;
+          } else if (bound == TranspositionTable.LOWER_BOUND) {
+            alpha = Math.max(alpha, score);
+          } else {
+            beta = Math.min(beta, score);
+          }
+          if (alpha >= beta) {
+            return score;
+          }
+        }
+      }
+      if (boardState.isOutOfMoves() || (remainingDepth <= 0)) {
+        double utility;
+        if (boardState.isOutOfMoves() || (quiescenceDepth == 0)) {
+          utility = this.evaluate(boardState, player);
+        } else {
+          utility = this.quiescence(boardState, depth, alpha, beta, player, quiescenceDepth);
+        }
+        if (this.useTable) {
+          byte bound = TranspositionTable.EXACT;
+          if (utility <= alpha) {
+            bound = TranspositionTable.UPPER_BOUND;
+          } else if (utility >= beta) {
+            bound = TranspositionTable.LOWER_BOUND;
+          }
+          table.store(key, 0, bound, utility, TranspositionTable.NO_MOVE);
+        }
+        return utility;
+      }
+
+      Player other = (player == aiPlayer) ? opponent : aiPlayer;
+      // completing a five wins on the spot, and otherwise the other player's fives must be stopped
+      if (boardState.getThreatCellCount(player, ThreatIndex.FIVE_GAIN) > 0) {
+        return winUtility;
+      }
+      this.ensurePly(depth, boardState);
+      int[] cells = this.moves[depth];
+      int[] scores = this.moveScores[depth];
+      int count = boardState.getThreatCells(other, ThreatIndex.FIVE_GAIN, cells);
+      if (count == 0) {
+        count = boardState.getCandidateCells(
+                new BoardSubset(lastMove, dimension, searchRadius), cells);
+      }
+      for (int i = 0; i < count; i++) {
+        scores[i] = this.orderScore(cells[i], hashCell, depth);
+      }
+
+      double originalAlpha = alpha;
+      double utility = Double.NEGATIVE_INFINITY;
+      int bestCell = -1;
+      int[] newMove = this.plyMoves[depth];
+
+      for (int i = 0; i < count; i++) {
+        selectBest(cells, scores, i, count);
+        newMove[0] = cells[i] / dimension;
+        newMove[1] = cells[i] % dimension;
+        boolean reduce = (i >= lateMoveCount) && (this.lateMoveReduction > 0)
+                && (remainingDepth > 2)
+                && !this.isThreatMove(boardState, newMove, player, other);
+        boardState.makeMove(newMove, player);
+        double moveUtility = Double.POSITIVE_INFINITY;
+        if (reduce) {
+          moveUtility = -negamax(boardState, newMove, depth + 1,
+                  Math.max(1, remainingDepth - 1 - this.lateMoveReduction), -Math.nextUp(alpha),
+                  -alpha, other);
+        }
+        if ((moveUtility > alpha) && !this.isStopped()) {
+          // a board state evaluated at the depth limit costs the same whatever the window
+          moveUtility = this.searchChild(boardState, newMove, depth + 1, remainingDepth - 1,
+                  alpha, beta, other, (i > 0) && (remainingDepth > 1));
+        }
+        boardState.unmakeMove();
+        if (this.isStopped()) {
+          // result of an unfinished search must not be stored
+          return utility;
+        }
+        if (moveUtility > utility) {
+          utility = moveUtility;
+          bestCell = cells[i];
+        }
+        alpha = Math.max(alpha, utility);
+        if (alpha >= beta) {
+          this.recordCutoff(cells[i], depth, remainingDepth);
+          break;
+        }
+      }
+
+      if (this.useTable && (bestCell >= 0)) {
+        byte bound = TranspositionTable.EXACT;
+        if (utility <= originalAlpha) {
+          bound = TranspositionTable.UPPER_BOUND;
+        } else if (utility >= beta) {
+          bound = TranspositionTable.LOWER_BOUND;
+        }
+        table.store(key, remainingDepth, bound, utility,
+                TranspositionTable.packMove(bestCell / dimension, bestCell % dimension));
+      }
+      return utility;
     }
-    return utility;
   }
 
   /**
-   * Minimizer function.
+   * Move the highest-scored move among cells[from...count) to index from. Picking one move at a
+   * time is cheaper than a full sort when a cutoff comes after a few moves.
    *
-   * @param boardState    last board state
-   * @param minUtility    minimum utility previously found
-   * @param lastMove      last move made
-   * @param depth         depth of minimax tree
-   * @return              return utility
+   * @param cells  moves as cells
+   * @param scores ordering score of each move
+   * @param from   first index not yet searched
+   * @param count  number of moves
    */
-  public double minimizer(GameBoard boardState, double minUtility, int[] lastMove, int depth) {
-    if (boardState.checkWinningMove(lastMove)) {
-      if (boardState.returnPosition(lastMove) == aiPlayer.getSymbol()) {
-        return 4;
-      } else {
-        return -4;
+  private static void selectBest(int[] cells, int[] scores, int from, int count) {
+    int best = from;
+    for (int i = from + 1; i < count; i++) {
+      if (scores[i] > scores[best]) {
+        best = i;
+      }
+    }
+    if (best != from) {
+      int cell = cells[from];
+      cells[from] = cells[best];
+      cells[best] = cell;
+      int score = scores[from];
+      scores[from] = scores[best];
+      scores[best] = score;
+    }
+  }
+
+  /**
+   * Narrow the moves searched at the root down to the moves forced by fives on board: the cells
+   * completing a five of aiPlayer if there are any, otherwise the cells stopping a five of
+   * opponent.
+   *
+   * @param boardState current board state
+   * @param actionSet  candidate moves
+   * @return forced moves, actionSet if no move is forced
+   */
+  private List<int[]> findForcedMoves(GameBoard boardState, List<int[]> actionSet) {
+    int dimension = boardState.getBoardDimension();
+    int[] cells = new int[dimension * dimension];
+    int count = boardState.getThreatCells(this.aiPlayer, ThreatIndex.FIVE_GAIN, cells);
+    if (count == 0) {
+      count = boardState.getThreatCells(this.opponent, ThreatIndex.FIVE_GAIN, cells);
+    }
+    if (count == 0) {
+      return actionSet;
+    }
+    List<int[]> forcedMoves = new ArrayList<int[]>(count);
+    for (int i = 0; i < count; i++) {
+      forcedMoves.add(new int[]{cells[i] / dimension, cells[i] % dimension});
+    }
+    return forcedMoves;
+  }
+
+  /**
+   * Getter for number of board states visited by the last call to getOptimalMove().
+   *
+   * @return node count
+   */
+  public long getNodeCount() {
+    return this.nodeCount;
+  }
+
+  /**
+   * Getter for moves the last finished search of the root found equally optimal. The move
+   * returned by getOptimalMove() is picked at random among them.
+   *
+   * @return optimal moves, in the order they were searched
+   */
+  public List<int[]> getOptimalMoves() {
+    return this.optimalMoves;
+  }
+
+  /**
+   * Getter for utility of the optimal moves of the last finished search of the root.
+   *
+   * @return utility, from the point of view of the AI player
+   */
+  public double getRootUtility() {
+    return this.rootUtility;
+  }
+
+  /**
+   * Check whether a time-limited search has run past its deadline, and if so mark the search as
+   * aborted.
+   *
+   * @return true if search has to stop, false if not
+   */
+  private boolean isOutOfTime() {
+    if (this.timeLimited && !this.searchAborted && (System.nanoTime() - this.deadline > 0)) {
+      this.searchAborted = true;
+    }
+    return this.searchAborted;
+  }
+
+  /**
+   * Search every move in actionSet to depthLimit and collect the moves with the highest utility.
+   * Ties are broken in favour of moves that make the longest streak.
+   * Utilities are only searched for inside the window (lower, upper). If the utility of the root
+   * ends up outside it, the moves returned are not reliable and the root has to be searched
+   * again with a wider window; rootUtility tells which side the search failed on.
+   *
+   * @param boardState current board state, restored when search ends
+   * @param actionSet  moves to search
+   * @param lower      utility below which moves need not be told apart
+   * @param upper      utility at which search may stop
+   * @return optimal moves, null if search was aborted before every move was searched
+   */
+  private List<int[]> searchRoot(GameBoard boardState, List<int[]> actionSet, double lower,
+                                 double upper) {
+    double[] utilities = new double[actionSet.size()];
+    // moves left unsearched after a fail high must not be selected
+    Arrays.fill(utilities, Double.NEGATIVE_INFINITY);
+    int[] streaks = new int[actionSet.size()];
+    if ((this.parallelMode == ParallelMode.ROOT_SPLIT) && (actionSet.size() > 1)) {
+      this.searchRootParallel(boardState, actionSet, lower, upper, utilities, streaks);
+    } else {
+      List<Future<Long>> helpers = (this.parallelMode == ParallelMode.LAZY_SMP)
+              ? this.startHelpers(boardState, actionSet) : null;
+      Searcher searcher = this.mainSearcher;
+      searcher.depthLimit = this.depthLimit;
+      long startCount = searcher.nodeCount;
+      int first = this.findHashMove(boardState, actionSet);
+      double utility = Double.NEGATIVE_INFINITY;
+      // moves are made and taken back on boardState itself, which is restored when search ends
+      for (int n = 0; n < actionSet.size(); n++) {
+        // best move of the previous iteration is searched first, then the rest in order
+        int i = (n == 0) ? first : ((n <= first) ? n - 1 : n);
+        int[] newMove = actionSet.get(i);
+        boardState.makeMove(newMove, aiPlayer);
+        utilities[i] = searcher.searchChild(boardState, newMove, 1, this.depthLimit - 1,
+                Math.max(rootAlpha(utility), lower), upper, opponent,
+                (n > 0) && (this.depthLimit > 1));
+        streaks[i] = boardState.checkMaximumConsecutive(newMove);
+        boardState.unmakeMove();
+        utility = Math.max(utility, utilities[i]);
+        // a move failing high is enough to know the window has to be widened
+        if (this.searchAborted || (utility >= upper)) {
+          break;
+        }
+      }
+      this.nodeCount += searcher.nodeCount - startCount;
+      if (helpers != null) {
+        this.stopHelpers(helpers);
       }
     }
-    if (boardState.isOutOfMoves() || (depth >= this.searchDepth)) {
-      return this.calculateUtilityOfBoardState(boardState);
+    if (this.searchAborted) {
+      return null;
     }
 
-    double utility = Double.POSITIVE_INFINITY;
-    List<int[]> actionSet = this.getActionSet(boardState, lastMove, this.searchRadius);
+    List<int[]> optimalMoveList = new ArrayList<int[]>();
+    double utility = Double.NEGATIVE_INFINITY;
+    double maxStreak = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < actionSet.size(); i++) {
+      double moveUtility = utilities[i];
+      int currStreak = streaks[i];
+      if ((moveUtility == utility)) {
+        if (maxStreak == currStreak) {
+          optimalMoveList.add(actionSet.get(i));
+        } else if (maxStreak < currStreak) {
+          optimalMoveList.clear();
+          optimalMoveList.add(actionSet.get(i));
+          maxStreak = currStreak;
+        }
+      }
+      if (moveUtility > utility) {
+        utility = moveUtility;
+        optimalMoveList.clear();
+        optimalMoveList.add(actionSet.get(i));
+        maxStreak = currStreak;
+      }
+    }
+    this.rootUtility = utility;
+    this.optimalMoves = optimalMoveList;
+    byte bound = TranspositionTable.EXACT;
+    if (utility <= lower) {
+      bound = TranspositionTable.UPPER_BOUND;
+    } else if (utility >= upper) {
+      bound = TranspositionTable.LOWER_BOUND;
+    }
+    table.store(boardState.getHash(), this.depthLimit, bound, utility,
+            TranspositionTable.packMove(optimalMoveList.get(0)[0], optimalMoveList.get(0)[1]));
+    return optimalMoveList;
+  }
 
-    for (int[] newMove : actionSet) {
-      utility = Math.min(utility, maximizer(boardState.getBoardState(newMove, opponent),
-              utility, newMove, depth + 1));
-      if (utility < minUtility) {
-        break;
+  /**
+   * Find the index of the best move stored in the transposition table for the root board state.
+   *
+   * @param boardState root board state
+   * @param actionSet  moves at root
+   * @return index of stored best move in actionSet, 0 if there is none
+   */
+  private int findHashMove(GameBoard boardState, List<int[]> actionSet) {
+    TranspositionTable.Entry entry = new TranspositionTable.Entry();
+    if (table.probe(boardState.getHash(), entry)
+            && (entry.getBestMove() != TranspositionTable.NO_MOVE)) {
+      int[] hashMove = TranspositionTable.unpackMove(entry.getBestMove());
+      for (int i = 0; i < actionSet.size(); i++) {
+        if (Arrays.equals(actionSet.get(i), hashMove)) {
+          return i;
+        }
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Lower bound of the window a root move is searched with. The bound sits just below the best
+   * utility found so far, so that utilities of moves tying with the best move are exact and the
+   * streak tie-break sees every one of them.
+   *
+   * @param bestUtility best utility found so far
+   * @return alpha for next root move
+   */
+  private static double rootAlpha(double bestUtility) {
+    return (bestUtility == Double.NEGATIVE_INFINITY) ? bestUtility : Math.nextDown(bestUtility);
+  }
+
+  /**
+   * Search root moves in parallel, each on its own copy of the board. The best utility found so
+   * far is shared through an atomic, so moves searched later can still be pruned against it.
+   * Utilities of moves worse than the best are only upper bounds, and which bound is found
+   * depends on timing; utilities tying with the best are always exact, so the moves selected from
+   * the results do not depend on thread scheduling. For the same reason every task orders moves by
+   * its own copy of the history scores, and the cutoffs found by all tasks are added to the history
+   * scores afterwards, in the order of the moves; and late moves are not reduced, since a reduced
+   * move's utility depends on the window it was searched with.
+   *
+   * @param boardState current board state, left unchanged
+   * @param actionSet  moves to search
+   * @param lower      utility below which moves need not be told apart
+   * @param upper      utility at which search may stop
+   * @param utilities  filled with utility of each move
+   * @param streaks    filled with longest streak made by each move
+   */
+  private void searchRootParallel(GameBoard boardState, List<int[]> actionSet, double lower,
+                                  double upper, double[] utilities, int[] streaks) {
+    AtomicLong bestUtility = new AtomicLong(Double.doubleToLongBits(Double.NEGATIVE_INFINITY));
+    long[] nodeCounts = new long[actionSet.size()];
+    int[][] histories = new int[actionSet.size()][];
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < actionSet.size(); i++) {
+      final int index = i;
+      tasks.add(() -> {
+        if (searchAborted) {
+          return null;
+        }
+        int[] newMove = actionSet.get(index);
+        GameBoard board = new GameBoard(boardState);
+        histories[index] = this.history.clone();
+        Searcher searcher = new Searcher(depthLimit, false, false, histories[index]);
+        searcher.lateMoveReduction = 0;
+        board.makeMove(newMove, aiPlayer);
+        double alpha = Math.max(rootAlpha(Double.longBitsToDouble(bestUtility.get())), lower);
+        double utility = searcher.searchChild(board, newMove, 1, depthLimit - 1, alpha, upper,
+                opponent, depthLimit > 1);
+        utilities[index] = utility;
+        streaks[index] = board.checkMaximumConsecutive(newMove);
+        nodeCounts[index] = searcher.nodeCount;
+        // raise shared best utility if this move improved it
+        bestUtility.accumulateAndGet(Double.doubleToLongBits(utility),
+            (current, update) -> (Double.longBitsToDouble(update)
+                    > Double.longBitsToDouble(current)) ? update : current);
+        return null;
+      });
+    }
+    int[] startHistory = this.history.clone();
+    this.pool.invokeAll(tasks);
+    for (long count : nodeCounts) {
+      this.nodeCount += count;
+    }
+    for (int[] taskHistory : histories) {
+      if (taskHistory != null) {
+        for (int cell = 0; cell < taskHistory.length; cell++) {
+          this.history[cell] = Math.min(this.history[cell] + taskHistory[cell]
+                  - startHistory[cell], HISTORY_MAX);
+        }
       }
     }
-    return utility;
+  }
+
+  /**
+   * Start the helper threads of a lazy SMP search. Each helper searches the whole root on its own
+   * board copy, starting from a different root move, and every other helper searches one ply
+   * deeper. Helpers only communicate with the main search through the transposition table, so
+   * the main search finds more of its board states already searched and prunes more. Each helper
+   * orders moves by its own copy of the history scores, which is dropped when it stops.
+   *
+   * @param boardState current board state, left unchanged
+   * @param actionSet  moves to search
+   * @return helper tasks, each returning its node count
+   */
+  private List<Future<Long>> startHelpers(GameBoard boardState, List<int[]> actionSet) {
+    this.helpersStopped = false;
+    List<Future<Long>> helpers = new ArrayList<Future<Long>>();
+    for (int h = 1; h < this.threads; h++) {
+      final int offset = h;
+      // copy on this thread, before the main search starts making moves on boardState
+      GameBoard board = new GameBoard(boardState);
+      int[] helperHistory = this.history.clone();
+      helpers.add(this.pool.submit(() -> {
+        Searcher searcher = new Searcher(depthLimit + (offset % 2), true, true, helperHistory);
+        double utility = Double.NEGATIVE_INFINITY;
+        for (int i = 0; (i < actionSet.size()) && !searcher.isStopped(); i++) {
+          int[] newMove = actionSet.get((i + offset) % actionSet.size());
+          board.makeMove(newMove, aiPlayer);
+          utility = Math.max(utility, -searcher.negamax(board, newMove, 1,
+                  searcher.depthLimit - 1, Double.NEGATIVE_INFINITY, -rootAlpha(utility),
+                  opponent));
+          board.unmakeMove();
+        }
+        return searcher.nodeCount;
+      }));
+    }
+    return helpers;
+  }
+
+  /**
+   * Stop the helper threads of a lazy SMP search and add their node counts.
+   *
+   * @param helpers helper tasks started by startHelpers()
+   */
+  private void stopHelpers(List<Future<Long>> helpers) {
+    this.helpersStopped = true;
+    for (Future<Long> helper : helpers) {
+      try {
+        this.nodeCount += helper.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Helper search failed.", e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Reset search statistics and prepare move ordering tables for a new call to getOptimalMove().
+   * History scores from earlier moves are halved, so that they still guide the search but recent
+   * cutoffs count more, and transposition table entries from earlier moves become replaceable.
+   *
+   * @param boardState current board state
+   */
+  private void startSearch(GameBoard boardState) {
+    int cells = boardState.getBoardDimension() * boardState.getBoardDimension();
+    if ((this.history == null) || (this.history.length != cells)) {
+      this.history = new int[cells];
+    }
+    for (int i = 0; i < cells; i++) {
+      this.history[i] >>= 1;
+    }
+    this.table.newSearch();
+    this.mainSearcher = new Searcher(this.depthLimit, false, true, this.history);
+    this.nodeCount = 0;
+  }
+
+  /**
+   * Look for a forced win of aiPlayer by threats, adding the positions visited to the node count.
+   *
+   * @param boardState current board state
+   * @return first move of a winning sequence, null if none was found
+   */
+  private int[] findThreatWin(GameBoard boardState) {
+    if (this.threatSolver == null) {
+      return null;
+    }
+    int[] move = this.threatSolver.findWin(boardState, this.aiPlayer, this.opponent);
+    this.nodeCount += this.threatSolver.getNodeCount();
+    if (move != null) {
+      this.rootUtility = winUtility;
+      System.out.println("Max Utility is: " + this.rootUtility + " (threat sequence)");
+    }
+    return move;
   }
 
   /**
@@ -208,37 +1119,105 @@ public class MinimaxAI extends AbstractAI{
       return this.getRandomMove();
     }
 
-    List<int[]> optimalMoveList = new ArrayList<int[]>();
-    List<int[]> actionSet = this.getActionSet(boardState, lastMove, this.searchRadius);
+    List<int[]> actionSet = this.findForcedMoves(boardState,
+            this.getActionSet(boardState, lastMove, this.searchRadius));
+    this.timeLimited = false;
+    this.searchAborted = false;
+    this.depthLimit = this.searchDepth;
+    this.startSearch(boardState);
+    int[] threatWin = this.findThreatWin(boardState);
+    if (threatWin != null) {
+      return threatWin;
+    }
+    List<int[]> optimalMoveList = this.searchRoot(boardState, actionSet,
+            Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
 
-    double utility = Double.NEGATIVE_INFINITY;
-    double moveUtility;
-    double maxStreak = Double.NEGATIVE_INFINITY;
-    int currStreak;
-    GameBoard newBoardState;
+    System.out.println("Max Utility is: " + this.rootUtility);
+    return this.getRandomMove(optimalMoveList);
+  }
 
-    for (int[] newMove : actionSet) {
-      newBoardState = boardState.getBoardState(newMove, aiPlayer);
-      moveUtility = minimizer(newBoardState, utility, newMove, 1);
-      currStreak = newBoardState.checkMaximumConsecutive(newMove);
+  /**
+   * Minimax optimizer with iterative deepening under a time budget.
+   * The board is searched to depth 1, 2, 3... until the budget runs out, and the optimal move of
+   * the deepest search that finished is returned. Searches stop early once a win or a loss is
+   * proven. Board states searched by shallower iterations are reused through the transposition
+   * table, so earlier iterations cost little on top of the last one.
+   * Utility rarely moves far between iterations of the same parity, so each iteration first
+   * searches a narrow aspiration window around the utility of the iteration two before, which
+   * prunes more; a side of the window the utility falls outside of is widened and the root
+   * searched again.
+   *
+   * @param boardState  current board state
+   * @param lastMove    last move made on board, null if this is the first move
+   * @param budget      time allowed for the search
+   * @return            optimal move
+   * @throws IllegalArgumentException if budget is null or negative
+   */
+  public int[] getOptimalMove(GameBoard boardState, int[] lastMove, Duration budget)
+          throws IllegalArgumentException {
+    if ((budget == null) || budget.isNegative()) {
+      throw new IllegalArgumentException("Time budget cannot be null or negative.");
+    }
+    if (lastMove == null) {
+      return this.getRandomMove();
+    }
 
-      if ((moveUtility == utility)) {
-        if (maxStreak == currStreak) {
-          optimalMoveList.add(newMove);
-        } else if (maxStreak < currStreak) {
-          optimalMoveList.clear();
-          optimalMoveList.add(newMove);
-          maxStreak = currStreak;
+    List<int[]> actionSet = this.findForcedMoves(boardState,
+            this.getActionSet(boardState, lastMove, this.searchRadius));
+    // if not even the first iteration finishes, any candidate is as good as another
+    List<int[]> optimalMoveList = actionSet;
+    int maxDepth = (boardState.getBoardDimension() * boardState.getBoardDimension())
+            - boardState.getMoveCount();
+    int completedDepth = 0;
+    /* utilities of the last two iterations: the player making the last move alternates with the
+    depth, so an iteration's utility is closer to that of two iterations before than one */
+    double[] parityUtilities = new double[2];
+
+    this.deadline = System.nanoTime() + budget.toNanos();
+    this.timeLimited = true;
+    this.searchAborted = false;
+    this.startSearch(boardState);
+    int[] threatWin = this.findThreatWin(boardState);
+    if (threatWin != null) {
+      this.timeLimited = false;
+      return threatWin;
+    }
+    for (int depth = 1; (depth <= maxDepth) && (actionSet.size() > 1); depth++) {
+      this.depthLimit = depth;
+      double lower = Double.NEGATIVE_INFINITY;
+      double upper = Double.POSITIVE_INFINITY;
+      double window = this.aspirationWindow;
+      double center = (completedDepth > 1) ? parityUtilities[depth % 2] : this.rootUtility;
+      if ((completedDepth > 0) && (window > 0)) {
+        lower = center - window;
+        upper = center + window;
+      }
+      List<int[]> depthMoveList = this.searchRoot(boardState, actionSet, lower, upper);
+      while ((depthMoveList != null)
+              && ((this.rootUtility <= lower) || (this.rootUtility >= upper))) {
+        // widen the side that failed, fully once the window would reach a win or a loss
+        window *= ASPIRATION_GROWTH;
+        if (this.rootUtility <= lower) {
+          lower = (center - window > -winUtility) ? center - window : Double.NEGATIVE_INFINITY;
+        } else {
+          upper = (center + window < winUtility) ? center + window : Double.POSITIVE_INFINITY;
         }
+        depthMoveList = this.searchRoot(boardState, actionSet, lower, upper);
       }
-      if (moveUtility > utility) {
-        utility = moveUtility;
-        optimalMoveList.clear();
-        optimalMoveList.add(newMove);
-        maxStreak = currStreak;
+      if (depthMoveList == null) {
+        break;
+      }
+      optimalMoveList = depthMoveList;
+      completedDepth = depth;
+      parityUtilities[depth % 2] = this.rootUtility;
+      if (Math.abs(this.rootUtility) >= winUtility) {
+        break;
       }
     }
-    System.out.println("Max Utility is: " + utility);
+    this.timeLimited = false;
+    this.depthLimit = this.searchDepth;
+
+    System.out.println("Max Utility is: " + this.rootUtility + " (depth " + completedDepth + ")");
     return this.getRandomMove(optimalMoveList);
   }
 }
@@ -0,0 +1,393 @@
+package caro.AI;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Table of learned Q-values for TrainedAI, mapping a board state and a move to the value of making
+ * the move in that state. A state is identified by its Zobrist hash and a move by its packed form
+ * (see TranspositionTable.packMove()), and the two are mixed into a single 64-bit key.
+ *
+ * <p>Keys and values are kept in two flat primitive buffers with open addressing: a pair is stored
+ * in the first free slot at or after the index its key hashes to. Each slot takes 12 bytes, and
+ * reading or writing a value never allocates. The buffers are doubled once they are two thirds
+ * full, so that probe sequences stay short.
+ *
+ * <p>A table can be saved to a snapshot file and loaded back. The snapshot is a short header
+ * followed by the two buffers exactly as they are laid out in memory, so a loaded table reads its
+ * pairs straight from the memory-mapped file: loading takes the same few milliseconds whatever the
+ * size of the table, and pages of the file are only read from disk once they are probed. The
+ * mapping is read-only; the first put() copies it into memory in one bulk transfer.
+ */
+public class QTable implements QValues {
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+  private static final int MAX_CAPACITY = 1 << 30;
+  // marks a free slot; a pair whose key would be 0 is stored under FREE_KEY_SUBSTITUTE instead
+  private static final long FREE_KEY = 0L;
+  private static final long FREE_KEY_SUBSTITUTE = 0x9E3779B97F4A7C15L;
+  // snapshot header: magic number, format version, number of slots, number of pairs
+  private static final int SNAPSHOT_MAGIC = 0x43515442;
+  private static final int SNAPSHOT_VERSION = 1;
+  private static final int SNAPSHOT_HEADER_BYTES = 16;
+  // slots written or copied per mapped region, keeping each region under the 2 GB mapping limit
+  private static final int SNAPSHOT_CHUNK = 1 << 24;
+  private LongBuffer keys;
+  private FloatBuffer values;
+  private int mask;
+  private int size;
+
+  /**
+   * Constructor with default capacity.
+   */
+  public QTable() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param capacity number of slots to start with, rounded up to a power of two
+   * @throws IllegalArgumentException if capacity is not positive or too large
+   */
+  public QTable(int capacity) throws IllegalArgumentException {
+    if ((capacity <= 0) || (capacity > MAX_CAPACITY)) {
+      throw new IllegalArgumentException("Capacity is out of range.");
+    }
+    int slots = Integer.highestOneBit(capacity);
+    if (slots < capacity) {
+      slots <<= 1;
+    }
+    this.keys = LongBuffer.allocate(slots);
+    this.values = FloatBuffer.allocate(slots);
+    this.mask = slots - 1;
+  }
+
+  /**
+   * Constructor for a table over existing buffers.
+   *
+   * @param keys   keys of slots, as many as a power of two
+   * @param values values of slots
+   * @param size   number of pairs stored
+   */
+  private QTable(LongBuffer keys, FloatBuffer values, int size) {
+    this.keys = keys;
+    this.values = values;
+    this.mask = keys.capacity() - 1;
+    this.size = size;
+  }
+
+  /**
+   * Getter for number of slots.
+   *
+   * @return number of slots the table currently has
+   */
+  @Override
+  public int getCapacity() {
+    return this.keys.capacity();
+  }
+
+  /**
+   * Getter for number of state, move pairs stored.
+   *
+   * @return number of pairs
+   */
+  @Override
+  public int getSize() {
+    return this.size;
+  }
+
+  /**
+   * Get the value of a state, move pair.
+   *
+   * @param stateHash hash of board state
+   * @param move      move packed with TranspositionTable.packMove()
+   * @return value stored for the pair, 0 if there is none
+   */
+  @Override
+  public float get(long stateHash, int move) {
+    long key = key(stateHash, move);
+    int index = this.find(key);
+    return (this.keys.get(index) == key) ? this.values.get(index) : 0f;
+  }
+
+  /**
+   * Check whether a value is stored for a state, move pair.
+   *
+   * @param stateHash hash of board state
+   * @param move      move packed with TranspositionTable.packMove()
+   * @return true if a value is stored, false if not
+   */
+  @Override
+  public boolean contains(long stateHash, int move) {
+    long key = key(stateHash, move);
+    return this.keys.get(this.find(key)) == key;
+  }
+
+  /**
+   * Store the value of a state, move pair, replacing any value stored for it before.
+   *
+   * @param stateHash hash of board state
+   * @param move      move packed with TranspositionTable.packMove()
+   * @param value     value
+   * @throws IllegalStateException if the table is full and cannot grow any further
+   */
+  @Override
+  public void put(long stateHash, int move, float value) throws IllegalStateException {
+    this.putKey(key(stateHash, move), value);
+  }
+
+  /**
+   * Get the largest value of several moves made in one state.
+   *
+   * @param stateHash hash of board state
+   * @param moves     moves packed with TranspositionTable.packMove()
+   * @param count     number of moves, from the start of moves
+   * @return largest value, counting 0 for a move with no value stored; negative infinity if count
+   *         is 0
+   */
+  @Override
+  public float getMax(long stateHash, int[] moves, int count) {
+    float max = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      max = Math.max(max, this.get(stateHash, moves[i]));
+    }
+    return max;
+  }
+
+  /**
+   * Store every pair of another table, replacing any value stored for it before.
+   *
+   * @param other table to copy pairs from
+   * @throws IllegalStateException if the table is full and cannot grow any further
+   */
+  void putAll(QTable other) throws IllegalStateException {
+    for (int i = 0; i < other.keys.capacity(); i++) {
+      if (other.keys.get(i) != FREE_KEY) {
+        this.putKey(other.keys.get(i), other.values.get(i));
+      }
+    }
+  }
+
+  /**
+   * Store the value of a key, replacing any value stored for it before.
+   *
+   * @param key   key of a pair
+   * @param value value
+   * @throws IllegalStateException if the table is full and cannot grow any further
+   */
+  private void putKey(long key, float value) throws IllegalStateException {
+    if (this.keys.isReadOnly()) {
+      this.copyToMemory();
+    }
+    int index = this.find(key);
+    if (this.keys.get(index) != key) {
+      if (3 * (this.size + 1) > 2 * this.keys.capacity()) {
+        this.grow();
+        index = this.find(key);
+      }
+      this.keys.put(index, key);
+      this.size++;
+    }
+    this.values.put(index, value);
+  }
+
+  /**
+   * Remove all pairs.
+   */
+  @Override
+  public void clear() {
+    this.keys = LongBuffer.allocate(this.keys.capacity());
+    this.values = FloatBuffer.allocate(this.values.capacity());
+    this.size = 0;
+  }
+
+  /**
+   * Save the table to a snapshot file, replacing the file if it exists.
+   *
+   * @param file path of snapshot file
+   * @throws IOException if the file cannot be written
+   */
+  @Override
+  public void save(Path file) throws IOException {
+    if (this.keys.isReadOnly()) {
+      // the file being replaced may be the one this table is mapped from
+      this.copyToMemory();
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      int capacity = this.keys.capacity();
+      ByteBuffer header = mapRegion(channel, FileChannel.MapMode.READ_WRITE, 0,
+              SNAPSHOT_HEADER_BYTES);
+      header.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(capacity).putInt(this.size);
+      for (int from = 0; from < capacity; from += SNAPSHOT_CHUNK) {
+        int count = Math.min(SNAPSHOT_CHUNK, capacity - from);
+        mapRegion(channel, FileChannel.MapMode.READ_WRITE, keysOffset(from), 8L * count)
+                .asLongBuffer().put(this.keys.slice(from, count));
+        mapRegion(channel, FileChannel.MapMode.READ_WRITE, valuesOffset(capacity, from),
+                4L * count).asFloatBuffer().put(this.values.slice(from, count));
+      }
+      channel.force(false);
+    }
+  }
+
+  /**
+   * Load a table from a snapshot file written by save().
+   *
+   * @param file path of snapshot file
+   * @return table holding the pairs saved in the file
+   * @throws IOException if the file cannot be read or is not a valid snapshot
+   */
+  public static QTable load(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() < SNAPSHOT_HEADER_BYTES) {
+        throw new IOException("File is not a Q-table snapshot.");
+      }
+      ByteBuffer header = mapRegion(channel, FileChannel.MapMode.READ_ONLY, 0,
+              SNAPSHOT_HEADER_BYTES);
+      if ((header.getInt() != SNAPSHOT_MAGIC) || (header.getInt() != SNAPSHOT_VERSION)) {
+        throw new IOException("File is not a Q-table snapshot.");
+      }
+      int capacity = header.getInt();
+      int size = header.getInt();
+      if ((capacity <= 0) || (capacity > MAX_CAPACITY) || (Integer.bitCount(capacity) != 1)
+              || (size < 0) || (size >= capacity)
+              || (channel.size() != valuesOffset(capacity, capacity))) {
+        throw new IOException("Q-table snapshot is corrupt.");
+      }
+      if (capacity <= SNAPSHOT_CHUNK) {
+        return new QTable(mapRegion(channel, FileChannel.MapMode.READ_ONLY, keysOffset(0),
+                8L * capacity).asLongBuffer(), mapRegion(channel, FileChannel.MapMode.READ_ONLY,
+                valuesOffset(capacity, 0), 4L * capacity).asFloatBuffer(), size);
+      }
+      // too large for a single mapping, so read straight into memory
+      QTable table = new QTable(LongBuffer.allocate(capacity), FloatBuffer.allocate(capacity),
+              size);
+      for (int from = 0; from < capacity; from += SNAPSHOT_CHUNK) {
+        int count = Math.min(SNAPSHOT_CHUNK, capacity - from);
+        table.keys.put(from, mapRegion(channel, FileChannel.MapMode.READ_ONLY, keysOffset(from),
+                8L * count).asLongBuffer(), 0, count);
+        table.values.put(from, mapRegion(channel, FileChannel.MapMode.READ_ONLY,
+                valuesOffset(capacity, from), 4L * count).asFloatBuffer(), 0, count);
+      }
+      return table;
+    }
+  }
+
+  /**
+   * Map a region of a snapshot file into memory.
+   *
+   * @param channel  channel of snapshot file
+   * @param mode     map mode
+   * @param position offset of region in file
+   * @param length   length of region in bytes
+   * @return buffer over the region, in the byte order snapshots are written in
+   * @throws IOException if the region cannot be mapped
+   */
+  private static ByteBuffer mapRegion(FileChannel channel, FileChannel.MapMode mode,
+                                      long position, long length) throws IOException {
+    return channel.map(mode, position, length).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Offset in a snapshot file of the key of a slot. Keys follow the header.
+   *
+   * @param slot slot index
+   * @return offset in bytes
+   */
+  private static long keysOffset(int slot) {
+    return SNAPSHOT_HEADER_BYTES + 8L * slot;
+  }
+
+  /**
+   * Offset in a snapshot file of the value of a slot. Values follow the keys.
+   *
+   * @param capacity number of slots of the saved table
+   * @param slot     slot index, or capacity for the end of the file
+   * @return offset in bytes
+   */
+  private static long valuesOffset(int capacity, int slot) {
+    return keysOffset(capacity) + 4L * slot;
+  }
+
+  /**
+   * Find the slot holding a key, or the free slot the key would be stored in. A table never fills
+   * up, but the keys of a loaded snapshot are not checked, so probing stops after every slot has
+   * been tried once.
+   *
+   * @param key key of a pair
+   * @return slot index
+   * @throws IllegalStateException if the key is missing and no slot is free, which only happens
+   *                               in a table loaded from a corrupt snapshot
+   */
+  private int find(long key) throws IllegalStateException {
+    int index = (int) key & this.mask;
+    for (int probes = 0; probes <= this.mask; probes++) {
+      if ((this.keys.get(index) == key) || (this.keys.get(index) == FREE_KEY)) {
+        return index;
+      }
+      index = (index + 1) & this.mask;
+    }
+    throw new IllegalStateException("Q-table is corrupt.");
+  }
+
+  /**
+   * Double the number of slots and store every pair again.
+   *
+   * @throws IllegalStateException if the table already has the largest number of slots
+   */
+  private void grow() throws IllegalStateException {
+    if (this.keys.capacity() >= MAX_CAPACITY) {
+      throw new IllegalStateException("Q-table is full.");
+    }
+    LongBuffer oldKeys = this.keys;
+    FloatBuffer oldValues = this.values;
+    this.keys = LongBuffer.allocate(oldKeys.capacity() << 1);
+    this.values = FloatBuffer.allocate(oldValues.capacity() << 1);
+    this.mask = this.keys.capacity() - 1;
+    for (int i = 0; i < oldKeys.capacity(); i++) {
+      if (oldKeys.get(i) != FREE_KEY) {
+        int index = this.find(oldKeys.get(i));
+        this.keys.put(index, oldKeys.get(i));
+        this.values.put(index, oldValues.get(i));
+      }
+    }
+  }
+
+  /**
+   * Copy the pairs of a table loaded from a snapshot file into memory, so that they can be
+   * changed.
+   */
+  private void copyToMemory() {
+    int capacity = this.keys.capacity();
+    LongBuffer mappedKeys = this.keys;
+    FloatBuffer mappedValues = this.values;
+    this.keys = LongBuffer.allocate(capacity);
+    this.values = FloatBuffer.allocate(capacity);
+    this.keys.put(0, mappedKeys, 0, capacity);
+    this.values.put(0, mappedValues, 0, capacity);
+  }
+
+  /**
+   * Key of a state, move pair. The state hash is already well mixed, so only the move is run
+   * through a mixing function before the two are combined.
+   *
+   * @param stateHash hash of board state
+   * @param move      packed move
+   * @return key, never FREE_KEY
+   */
+  private static long key(long stateHash, int move) {
+    // SplitMix64 finalizer
+    long z = (move & 0xFFFFFFFFL) + 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    long key = stateHash ^ z ^ (z >>> 31);
+    return (key == FREE_KEY) ? FREE_KEY_SUBSTITUTE : key;
+  }
+}
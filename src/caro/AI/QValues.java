@@ -0,0 +1,78 @@
+package caro.AI;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Learned Q-values of TrainedAI, mapping a board state and a move to the value of making the move
+ * in that state. QTable keeps the values for a single thread, and ConcurrentQTable for several
+ * training threads at once.
+ */
+public interface QValues {
+  /**
+   * Getter for number of slots.
+   *
+   * @return number of slots the table currently has
+   */
+  int getCapacity();
+
+  /**
+   * Getter for number of state, move pairs stored.
+   *
+   * @return number of pairs
+   */
+  int getSize();
+
+  /**
+   * Get the value of a state, move pair.
+   *
+   * @param stateHash hash of board state
+   * @param move      move packed with TranspositionTable.packMove()
+   * @return value stored for the pair, 0 if there is none
+   */
+  float get(long stateHash, int move);
+
+  /**
+   * Get the largest value of several moves made in one state.
+   *
+   * @param stateHash hash of board state
+   * @param moves     moves packed with TranspositionTable.packMove()
+   * @param count     number of moves, from the start of moves
+   * @return largest value, counting 0 for a move with no value stored; negative infinity if count
+   *         is 0
+   */
+  float getMax(long stateHash, int[] moves, int count);
+
+  /**
+   * Check whether a value is stored for a state, move pair.
+   *
+   * @param stateHash hash of board state
+   * @param move      move packed with TranspositionTable.packMove()
+   * @return true if a value is stored, false if not
+   */
+  boolean contains(long stateHash, int move);
+
+  /**
+   * Store the value of a state, move pair, replacing any value stored for it before.
+   *
+   * @param stateHash hash of board state
+   * @param move      move packed with TranspositionTable.packMove()
+   * @param value     value
+   * @throws IllegalStateException if the table is full and cannot grow any further
+   */
+  void put(long stateHash, int move, float value) throws IllegalStateException;
+
+  /**
+   * Remove all pairs.
+   */
+  void clear();
+
+  /**
+   * Save the values to a snapshot file, replacing the file if it exists. The snapshot loads with
+   * QTable.load().
+   *
+   * @param file path of snapshot file
+   * @throws IOException if the file cannot be written
+   */
+  void save(Path file) throws IOException;
+}
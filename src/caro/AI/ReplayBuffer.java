@@ -0,0 +1,184 @@
+package caro.AI;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size ring buffer of transitions for experience replay. TrainedAI records each move it
+ * observes here and learns from random samples of the buffer, so that every transition is learned
+ * from several times before it is overwritten by newer ones.
+ *
+ * <p>A transition is kept in flat primitive arrays as the hash of the state the move was made in,
+ * the packed move, the reward, the hash of the state the move led to, and the moves possible in
+ * that state. The moves are stored as a bit set over the cells of the board, so a transition on a
+ * 15 by 15 board takes 56 bytes however many moves it lists, and adding one never allocates.
+ */
+public class ReplayBuffer {
+  public static final int DEFAULT_CAPACITY = 1 << 14;
+  private final int boardDimension;
+  // number of longs in the bit set of a transition's next moves
+  private final int moveWords;
+  private final long[] stateHashes;
+  private final int[] moves;
+  private final float[] rewards;
+  private final long[] nextStateHashes;
+  private final long[] nextMoveBits;
+  // slot the next transition is written to, and number of transitions stored
+  private int next;
+  private int size;
+
+  /**
+   * Constructor with default capacity.
+   *
+   * @param boardDimension dimension of board
+   * @throws IllegalArgumentException if boardDimension is not positive
+   */
+  public ReplayBuffer(int boardDimension) throws IllegalArgumentException {
+    this(DEFAULT_CAPACITY, boardDimension);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param capacity       number of transitions kept
+   * @param boardDimension dimension of board
+   * @throws IllegalArgumentException if capacity or boardDimension is not positive
+   */
+  public ReplayBuffer(int capacity, int boardDimension) throws IllegalArgumentException {
+    if ((capacity <= 0) || (boardDimension <= 0)) {
+      throw new IllegalArgumentException("Capacity and board dimension must be positive.");
+    }
+    this.boardDimension = boardDimension;
+    this.moveWords = (boardDimension * boardDimension + 63) >>> 6;
+    this.stateHashes = new long[capacity];
+    this.moves = new int[capacity];
+    this.rewards = new float[capacity];
+    this.nextStateHashes = new long[capacity];
+    this.nextMoveBits = new long[capacity * this.moveWords];
+  }
+
+  /**
+   * Getter for board dimension.
+   *
+   * @return dimension of board the transitions were made on
+   */
+  public int getBoardDimension() {
+    return this.boardDimension;
+  }
+
+  /**
+   * Getter for capacity.
+   *
+   * @return number of transitions the buffer keeps
+   */
+  public int getCapacity() {
+    return this.moves.length;
+  }
+
+  /**
+   * Getter for number of transitions stored.
+   *
+   * @return number of transitions, at most capacity
+   */
+  public int getSize() {
+    return this.size;
+  }
+
+  /**
+   * Add a transition, overwriting the oldest one once the buffer is full.
+   *
+   * @param stateHash     hash of state the move was made in
+   * @param move          move packed with TranspositionTable.packMove()
+   * @param reward        reward of the move
+   * @param nextStateHash hash of state the move led to
+   * @param nextMoves     moves possible in the next state, packed with
+   *                      TranspositionTable.packMove()
+   * @param nextMoveCount number of next moves, from the start of nextMoves
+   */
+  public void add(long stateHash, int move, float reward, long nextStateHash, int[] nextMoves,
+                  int nextMoveCount) {
+    int slot = this.next;
+    this.stateHashes[slot] = stateHash;
+    this.moves[slot] = move;
+    this.rewards[slot] = reward;
+    this.nextStateHashes[slot] = nextStateHash;
+    int base = slot * this.moveWords;
+    Arrays.fill(this.nextMoveBits, base, base + this.moveWords, 0L);
+    for (int i = 0; i < nextMoveCount; i++) {
+      int cell = (nextMoves[i] >>> 16) * this.boardDimension + (nextMoves[i] & 0xFFFF);
+      this.nextMoveBits[base + (cell >>> 6)] |= 1L << cell;
+    }
+    this.next = (slot + 1 == this.moves.length) ? 0 : slot + 1;
+    this.size = Math.min(this.size + 1, this.moves.length);
+  }
+
+  /**
+   * Remove all transitions.
+   */
+  public void clear() {
+    this.next = 0;
+    this.size = 0;
+  }
+
+  /**
+   * Getter for state hash of a transition.
+   *
+   * @param index transition index, 0 to getSize() - 1
+   * @return hash of state the move was made in
+   */
+  public long getStateHash(int index) {
+    return this.stateHashes[index];
+  }
+
+  /**
+   * Getter for move of a transition.
+   *
+   * @param index transition index, 0 to getSize() - 1
+   * @return move packed with TranspositionTable.packMove()
+   */
+  public int getMove(int index) {
+    return this.moves[index];
+  }
+
+  /**
+   * Getter for reward of a transition.
+   *
+   * @param index transition index, 0 to getSize() - 1
+   * @return reward of the move
+   */
+  public float getReward(int index) {
+    return this.rewards[index];
+  }
+
+  /**
+   * Getter for next state hash of a transition.
+   *
+   * @param index transition index, 0 to getSize() - 1
+   * @return hash of state the move led to
+   */
+  public long getNextStateHash(int index) {
+    return this.nextStateHashes[index];
+  }
+
+  /**
+   * Copy the moves possible in the next state of a transition, in cell order.
+   *
+   * @param index     transition index, 0 to getSize() - 1
+   * @param nextMoves filled with moves packed with TranspositionTable.packMove(), must hold at
+   *                  least boardDimension * boardDimension moves
+   * @return number of moves copied
+   */
+  public int getNextMoves(int index, int[] nextMoves) {
+    int count = 0;
+    int base = index * this.moveWords;
+    for (int word = 0; word < this.moveWords; word++) {
+      long bits = this.nextMoveBits[base + word];
+      while (bits != 0) {
+        int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+        nextMoves[count++] = TranspositionTable.packMove(cell / this.boardDimension,
+                cell % this.boardDimension);
+        bits &= bits - 1;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,247 @@
+package caro.AI;
+
+import caro.Player;
+import caro.board.GameBoard;
+import caro.board.ThreatIndex;
+import java.util.Arrays;
+
+/**
+ * Threat-space search, looking for a forced win made only of threats. A victory by continuous
+ * fours (VCF) leaves the defender a single reply to every attacking move, so it can be followed
+ * tens of plies deep at little cost; a victory by continuous threats (VCT) also lets the attacker
+ * make open threes, and tries every reply that stops them or answers with a four.
+ *
+ * <p>Attacking moves and replies are read from the board's threat index, and every position is
+ * visited by making and taking back moves on the board. Threat sequences often reach the same
+ * position in different orders, so positions found not to be won are remembered by their hash for
+ * the rest of the search. The search gives up once it has visited its node budget, so a win it does
+ * not find may still exist.
+ */
+public class ThreatSolver {
+  public static final int DEFAULT_NODE_BUDGET = 10000;
+  public static final int DEFAULT_MAX_DEPTH = 16;
+  public static final int DEFAULT_THREE_DEPTH = 4;
+  private static final int TABLE_SIZE = 1 << 16;
+  private final int nodeBudget;
+  private final int maxDepth;
+  private final int threeDepth;
+  // number of attacking moves that may be open threes in the current iteration
+  private int threeLimit;
+  private long nodeCount;
+  // cell of the winning move at the root, found by the last successful search
+  private int rootCell;
+  // per-ply buffers of attacking moves and replies, as cells (row * dimension + col)
+  private int[][] fourMoves = new int[0][];
+  private int[][] threeMoves = new int[0][];
+  private int[][] replies = new int[0][];
+  private final int[] move = new int[2];
+  // hashes of positions found not to be won, with the number of attacking moves that were left
+  private final long[] failedKeys = new long[TABLE_SIZE];
+  private final byte[] failedDepths = new byte[TABLE_SIZE];
+
+  /**
+   * Constructor with default node budget and depth.
+   */
+  public ThreatSolver() {
+    this(DEFAULT_NODE_BUDGET, DEFAULT_MAX_DEPTH, DEFAULT_THREE_DEPTH);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param nodeBudget number of positions a search may visit
+   * @param maxDepth   number of attacking moves a winning sequence may have
+   * @param threeDepth number of attacking moves from the start of a sequence that may be open
+   *                   threes, the rest have to be fours
+   * @throws IllegalArgumentException if nodeBudget or maxDepth is not positive, or threeDepth is
+   *                                  negative
+   */
+  public ThreatSolver(int nodeBudget, int maxDepth, int threeDepth)
+          throws IllegalArgumentException {
+    if ((nodeBudget <= 0) || (maxDepth <= 0) || (threeDepth < 0)) {
+      throw new IllegalArgumentException("Node budget and depth must be positive.");
+    }
+    this.nodeBudget = nodeBudget;
+    this.maxDepth = maxDepth;
+    this.threeDepth = threeDepth;
+  }
+
+  /**
+   * Getter for number of positions visited by the last call to findWin().
+   *
+   * @return node count
+   */
+  public long getNodeCount() {
+    return this.nodeCount;
+  }
+
+  /**
+   * Look for a forced win of attacker, who is to move. Sequences of fours are searched first,
+   * then sequences of fours and open threes.
+   *
+   * @param boardState current board state, restored before returning
+   * @param attacker   player to move
+   * @param defender   other player
+   * @return first move of a winning sequence, null if none was found within the node budget
+   */
+  public int[] findWin(GameBoard boardState, Player attacker, Player defender) {
+    this.nodeCount = 0;
+    int dimension = boardState.getBoardDimension();
+    if ((this.fourMoves.length == 0) || (this.fourMoves[0].length != dimension * dimension)) {
+      this.fourMoves = new int[this.maxDepth + 1][dimension * dimension];
+      this.threeMoves = new int[this.maxDepth + 1][dimension * dimension];
+      this.replies = new int[this.maxDepth + 1][dimension * dimension];
+    }
+    /* open threes are allowed in one more attacking move at a time, so that short wins are found
+    before the budget is spent on long ones; positions not won with fewer threes may be won with
+    more, so they are forgotten between iterations */
+    for (this.threeLimit = 0; (this.threeLimit <= this.threeDepth)
+            && (this.nodeCount < this.nodeBudget); this.threeLimit++) {
+      Arrays.fill(this.failedKeys, 0L);
+      if (this.attack(boardState, attacker, defender, 0)) {
+        return new int[]{this.rootCell / dimension, this.rootCell % dimension};
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Check whether attacker, who is to move, wins by threats.
+   *
+   * @param boardState board state, restored before returning
+   * @param attacker   player to move
+   * @param defender   other player
+   * @param depth      number of attacking moves made so far
+   * @return true if a win is found, false if not
+   */
+  private boolean attack(GameBoard boardState, Player attacker, Player defender, int depth) {
+    if (this.nodeCount >= this.nodeBudget) {
+      return false;
+    }
+    this.nodeCount++;
+    int[] fours = this.fourMoves[depth];
+    if (boardState.getThreatCells(attacker, ThreatIndex.FIVE_GAIN, fours) > 0) {
+      this.recordWin(fours[0], depth);
+      return true;
+    }
+    if (depth >= this.maxDepth) {
+      return false;
+    }
+    long key = boardState.getHash();
+    int index = (int) key & (TABLE_SIZE - 1);
+    if ((key != 0) && (this.failedKeys[index] == key)
+            && (this.failedDepths[index] >= this.maxDepth - depth)) {
+      return false;
+    }
+    // a five of the defender has to be stopped, and stopping it has to be a threat too
+    int fourCount = boardState.getThreatCells(defender, ThreatIndex.FIVE_GAIN, fours);
+    int threeCount = 0;
+    if (fourCount > 1) {
+      return false;
+    } else if (fourCount == 0) {
+      fourCount = boardState.getThreatCells(attacker, ThreatIndex.FOUR_MOVE, fours);
+      if (depth < this.threeLimit) {
+        threeCount = boardState.getThreatCells(attacker, ThreatIndex.THREE_MOVE,
+                this.threeMoves[depth]);
+      }
+    }
+
+    int dimension = boardState.getBoardDimension();
+    for (int i = 0; i < fourCount + threeCount; i++) {
+      int cell = (i < fourCount) ? fours[i] : this.threeMoves[depth][i - fourCount];
+      this.move[0] = cell / dimension;
+      this.move[1] = cell % dimension;
+      boardState.makeMove(this.move, attacker);
+      boolean win = this.answer(boardState, attacker, defender, depth, i >= fourCount);
+      boardState.unmakeMove();
+      if (win) {
+        this.recordWin(cell, depth);
+        return true;
+      }
+      if (this.nodeCount >= this.nodeBudget) {
+        return false;
+      }
+    }
+    this.failedKeys[index] = key;
+    this.failedDepths[index] = (byte) (this.maxDepth - depth);
+    return false;
+  }
+
+  /**
+   * Check whether attacker still wins after every reply of defender to an attacking move.
+   *
+   * @param boardState  board state after the attacking move, restored before returning
+   * @param attacker    player who made the attacking move
+   * @param defender    player to move
+   * @param depth       number of attacking moves made before the last one
+   * @param threeMove   whether the move was taken from the open three moves, in which case a
+   *                    move making a four was already tried with the four moves
+   * @return true if a win is found, false if not
+   */
+  private boolean answer(GameBoard boardState, Player attacker, Player defender, int depth,
+                         boolean threeMove) {
+    int[] cells = this.replies[depth];
+    int fives = boardState.getThreatCells(attacker, ThreatIndex.FIVE_GAIN, cells);
+    if (fives > 1) {
+      // defender has no five to make first, and can only stop one of these
+      return true;
+    }
+    if (fives == 1) {
+      return !threeMove && this.reply(boardState, attacker, defender, depth, cells[0]);
+    }
+    if ((depth >= this.threeLimit)
+            || (boardState.getThreatCount(attacker, ThreatIndex.OPEN_THREE) == 0)) {
+      return false;
+    }
+    // an open three is stopped on one of its cost cells, or answered with a four
+    int count = boardState.getThreatCells(attacker, ThreatIndex.THREE_COST, cells);
+    if (count == 0) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      if (!this.reply(boardState, attacker, defender, depth, cells[i])) {
+        return false;
+      }
+    }
+    count = boardState.getThreatCells(defender, ThreatIndex.FOUR_MOVE, cells);
+    for (int i = 0; i < count; i++) {
+      if (!this.reply(boardState, attacker, defender, depth, cells[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Play a reply of defender and check whether attacker still wins.
+   *
+   * @param boardState board state, restored before returning
+   * @param attacker   player who made the attacking move
+   * @param defender   player to move
+   * @param depth      number of attacking moves made before the last one
+   * @param cell       reply as cell (row * dimension + col)
+   * @return true if attacker still wins, false if not or if the node budget ran out
+   */
+  private boolean reply(GameBoard boardState, Player attacker, Player defender, int depth,
+                        int cell) {
+    int dimension = boardState.getBoardDimension();
+    this.move[0] = cell / dimension;
+    this.move[1] = cell % dimension;
+    boardState.makeMove(this.move, defender);
+    boolean win = this.attack(boardState, attacker, defender, depth + 1);
+    boardState.unmakeMove();
+    return win;
+  }
+
+  /**
+   * Remember the winning move if it was made at the root.
+   *
+   * @param cell  winning move as cell
+   * @param depth number of attacking moves made before it
+   */
+  private void recordWin(int cell, int depth) {
+    if (depth == 0) {
+      this.rootCell = cell;
+    }
+  }
+}
@@ -1,21 +1,40 @@
 package caro.AI;
 
+import caro.board.BoardSubset;
 import caro.board.GameBoard;
+import caro.board.Symmetry;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 
 /**
  * TrainedAI is obtained through reinforcement learning.
  * This class inherits from AbstractAI.
+ *
+ * <p>The 8 rotations and reflections of a position are worth the same, so Q-values are learned
+ * once for all of them: a state is looked up in the orientation with the smallest hash, and a move
+ * is mapped along with it. A position that is its own mirror image has several such orientations,
+ * and its moves are mapped to the smallest of their images, so that mirrored moves share a value.
  */
 public class TrainedAI extends AbstractAI {
   private double alpha;
   private double epsilon;
-  private Map<GameBoard, Map<int[], Double>> qvalueDict;
+  private QValues qTable;
+  // whole board and candidate cell buffer, reused so that looking up Q-values never allocates
+  private BoardSubset wholeBoard;
+  private int[] cells = new int[0];
+  private boolean useSymmetries = true;
+  // hash of the last state looked up in its canonical orientation, and the symmetries taking the
+  // state to that orientation as a bit mask
+  private long canonicalHash;
+  private int canonicalSymmetries;
+  // transitions waiting to be learned from, null to learn from each transition as it is recorded
+  private ReplayBuffer replayBuffer;
+  private int[] replayMoves = new int[0];
+  private Random random = new Random();
 
   /**
    * Constructor.
@@ -23,27 +42,222 @@ public class TrainedAI extends AbstractAI {
    * @param boardDimension    dimension of board
    */
   public TrainedAI(int boardDimension) {
+    this(boardDimension, new QTable());
+  }
+
+  /**
+   * Constructor. AIs trained on several threads at once each need their own TrainedAI, and share
+   * their learning through a ConcurrentQTable.
+   *
+   * @param boardDimension    dimension of board
+   * @param qTable            table of Q-values, learned so far or empty
+   * @throws IllegalArgumentException if qTable is null
+   */
+  public TrainedAI(int boardDimension, QValues qTable) throws IllegalArgumentException {
     super(boardDimension);
-    this.qvalueDict = new HashMap<GameBoard, Map<int[], Double>>();
+    if (qTable == null) {
+      throw new IllegalArgumentException("Q-table cannot be null.");
+    }
+    this.qTable = qTable;
     this.alpha = 0.5;
     this.epsilon = 0.3;
   }
 
   /**
-   * Update the q value of a state, move pair in HashMap q.
+   * Getter for Q-table.
+   *
+   * @return table of learned Q-values
+   */
+  public QValues getQTable() {
+    return this.qTable;
+  }
+
+  /**
+   * Save the learned Q-table to a snapshot file, so that it can be loaded instead of trained again.
+   *
+   * @param file path of snapshot file
+   * @throws IOException if the file cannot be written
+   */
+  public void saveQTable(Path file) throws IOException {
+    this.qTable.save(file);
+  }
+
+  /**
+   * Replace the Q-table with one loaded from a snapshot file. The snapshot must have been learned
+   * on a board of the same dimension and with the same symmetry setting.
+   *
+   * @param file path of snapshot file
+   * @throws IOException if the file cannot be read or is not a valid snapshot
+   */
+  public void loadQTable(Path file) throws IOException {
+    this.qTable = QTable.load(file);
+  }
+
+  /**
+   * Getter for replay buffer.
+   *
+   * @return buffer of recorded transitions, null if transitions are learned from as they are
+   *         recorded
+   */
+  public ReplayBuffer getReplayBuffer() {
+    return this.replayBuffer;
+  }
+
+  /**
+   * Set the buffer that record() stores transitions in, to be learned from by replay().
+   *
+   * @param replayBuffer buffer of transitions, null to learn from each transition as it is recorded
+   * @throws IllegalArgumentException if buffer is for a different board dimension
+   */
+  public void setReplayBuffer(ReplayBuffer replayBuffer) throws IllegalArgumentException {
+    if ((replayBuffer != null) && (replayBuffer.getBoardDimension() != this.boardDimension)) {
+      throw new IllegalArgumentException("Replay buffer is for a different board dimension.");
+    }
+    this.replayBuffer = replayBuffer;
+    this.replayMoves = new int[this.boardDimension * this.boardDimension];
+  }
+
+  /**
+   * Set whether states and moves are mapped to a canonical orientation before being looked up.
+   * Tables learned with and without symmetries cannot be mixed.
+   *
+   * @param useSymmetries true to learn one value for all orientations of a position
+   */
+  public void setUseSymmetries(boolean useSymmetries) {
+    this.useSymmetries = useSymmetries;
+  }
+
+  /**
+   * Find the canonical orientation of a state: of the state's rotations and reflections, the one
+   * with the smallest hash.
+   *
+   * @param state board state
+   */
+  private void canonicalize(GameBoard state) {
+    this.canonicalHash = state.getHash();
+    this.canonicalSymmetries = 1 << Symmetry.IDENTITY;
+    if (!this.useSymmetries) {
+      return;
+    }
+    for (int symmetry = 1; symmetry < Symmetry.NUM_SYMMETRIES; symmetry++) {
+      long symmetryHash = state.getSymmetryHash(symmetry);
+      if (symmetryHash < this.canonicalHash) {
+        this.canonicalHash = symmetryHash;
+        this.canonicalSymmetries = 1 << symmetry;
+      } else if (symmetryHash == this.canonicalHash) {
+        this.canonicalSymmetries |= 1 << symmetry;
+      }
+    }
+  }
+
+  /**
+   * Map a move into the canonical orientation found by the last call to canonicalize().
+   *
+   * @param row       row of move
+   * @param col       col of move
+   * @param dimension board dimension
+   * @return move in canonical orientation, packed with TranspositionTable.packMove()
+   */
+  private int canonicalMove(int row, int col, int dimension) {
+    int move = Integer.MAX_VALUE;
+    for (int symmetry = 0; symmetry < Symmetry.NUM_SYMMETRIES; symmetry++) {
+      if ((this.canonicalSymmetries & (1 << symmetry)) != 0) {
+        int cell = Symmetry.transform(symmetry, row, col, dimension);
+        move = Math.min(move, TranspositionTable.packMove(cell / dimension, cell % dimension));
+      }
+    }
+    return move;
+  }
+
+  /**
+   * Update the q value of a state, move pair in Q-table.
    *
    * @param oldState    old state
    * @param move        move to be applied to old state
    * @param newState    new state after move
    * @param reward      old reward
    */
-  public void update(GameBoard oldState, int[] move, GameBoard newState, Double reward) {
-    Double oldQ, maxReward;
+  public void update(GameBoard oldState, int[] move, GameBoard newState, double reward) {
+    double oldQ, maxReward;
     oldQ = this.getqValue(oldState, move);
     maxReward = this.maxFutureRewards(newState);
     this.updateqValue(oldState, move, oldQ, reward, maxReward);
   }
 
+  /**
+   * Learn from a move just made on a board. With a replay buffer set, the transition is stored to
+   * be learned from later by replay(); otherwise it is learned from at once, as by update().
+   * The move is taken back to read the state it was made in and then made again, so the caller
+   * does not need to keep a copy of the board from before the move.
+   *
+   * @param newState    board state after move, with move as the last move made on it
+   * @param move        move
+   * @param reward      reward
+   * @throws IllegalArgumentException if move is not the last move made on newState
+   */
+  public void record(GameBoard newState, int[] move, double reward)
+          throws IllegalArgumentException {
+    int[] lastMove = newState.getLastMove();
+    if ((lastMove == null) || (move == null) || (lastMove[0] != move[0])
+            || (lastMove[1] != move[1])) {
+      throw new IllegalArgumentException("Move must be the last move made on board.");
+    }
+    int count = this.canonicalCandidates(newState);
+    long nextStateHash = this.canonicalHash;
+    char symbol = newState.returnPosition(move);
+    newState.unmakeMove();
+    this.canonicalize(newState);
+    int canonicalMove = this.canonicalMove(move[0], move[1], this.boardDimension);
+    newState.addMove(move, symbol);
+    if (this.replayBuffer == null) {
+      this.learn(this.canonicalHash, canonicalMove, reward, nextStateHash, this.cells, count);
+    } else {
+      this.replayBuffer.add(this.canonicalHash, canonicalMove, (float) reward, nextStateHash,
+              this.cells, count);
+    }
+  }
+
+  /**
+   * Learn from a batch of transitions sampled at random from the replay buffer. A transition stays
+   * in the buffer after it is learned from, so it can be sampled again by later batches.
+   *
+   * @param batchSize   number of transitions to learn from
+   * @throws IllegalArgumentException if batchSize is negative
+   */
+  public void replay(int batchSize) throws IllegalArgumentException {
+    if (batchSize < 0) {
+      throw new IllegalArgumentException("Batch size cannot be negative.");
+    }
+    if ((this.replayBuffer == null) || (this.replayBuffer.getSize() == 0)) {
+      return;
+    }
+    for (int i = 0; i < batchSize; i++) {
+      int index = this.random.nextInt(this.replayBuffer.getSize());
+      int count = this.replayBuffer.getNextMoves(index, this.replayMoves);
+      this.learn(this.replayBuffer.getStateHash(index), this.replayBuffer.getMove(index),
+              this.replayBuffer.getReward(index), this.replayBuffer.getNextStateHash(index),
+              this.replayMoves, count);
+    }
+  }
+
+  /**
+   * Apply one Q-learning update to a transition given in canonical orientation.
+   *
+   * @param stateHash     canonical hash of state the move was made in
+   * @param move          canonical move
+   * @param reward        reward
+   * @param nextStateHash canonical hash of state the move led to
+   * @param nextMoves     canonical moves possible in the next state
+   * @param nextMoveCount number of next moves, 0 if the game cannot go on
+   */
+  private void learn(long stateHash, int move, double reward, long nextStateHash, int[] nextMoves,
+                     int nextMoveCount) {
+    double oldQ = this.qTable.get(stateHash, move);
+    double maxReward = (nextMoveCount == 0) ? 0
+            : this.qTable.getMax(nextStateHash, nextMoves, nextMoveCount);
+    this.qTable.put(stateHash, move, (float) (oldQ + this.alpha * (reward + maxReward - oldQ)));
+  }
+
   /**
    * Update the Q-value for the state `state` and the action `action`
    * given the previous Q-value `old_q`, a current reward `reward`,
@@ -57,54 +271,61 @@ public class TrainedAI extends AbstractAI {
    */
   public void updateqValue(GameBoard state, int[] move, double oldq,
                            double reward, double futureReward) {
-    if (this.qvalueDict.get(state) == null) {
-      HashMap<int[], Double> moveMap = new HashMap<int[], Double>();
-      moveMap.put(move, oldq + this.alpha * (reward + futureReward - oldq));
-      this.qvalueDict.put(state, moveMap);
-    }
-    else {
-      this.qvalueDict.get(state).put(move, oldq + this.alpha * (reward + futureReward - oldq));
-    }
+    this.canonicalize(state);
+    this.qTable.put(this.canonicalHash,
+            this.canonicalMove(move[0], move[1], state.getBoardDimension()),
+            (float) (oldq + this.alpha * (reward + futureReward - oldq)));
   }
 
   /**
-   * Get q value of a [state, move] pair.
+   * Get q value of a [state, move] pair. States are told apart by their hash and moves by their
+   * coordinates, so any array holding the same move finds the same value, and so does the same
+   * move in a rotated or reflected state.
    *
    * @param state board state
    * @param move  move
-   * @return      q value of state, move
+   * @return      q value of state, move, 0 if it was never updated
    */
-  public Double getqValue(GameBoard state, int[] move) {
-    Double qvalue;
-    if (this.qvalueDict.containsKey(state)) {
-      qvalue = this.qvalueDict.get(state).get(move);
-    } else {
-      qvalue = null;
-    }
-    if (qvalue == null) {
-      qvalue = 0.0;
-    }
-    return qvalue;
+  public double getqValue(GameBoard state, int[] move) {
+    this.canonicalize(state);
+    return this.qTable.get(this.canonicalHash,
+            this.canonicalMove(move[0], move[1], state.getBoardDimension()));
   }
 
   /**
    * Find maximum future rewards.
    *
    * @param state   state of board
-   * @return        best reward for state
+   * @return        best reward for state, 0 if no move is left
    */
-  public Double maxFutureRewards(GameBoard state) {
-    Double maxQ = Double.NEGATIVE_INFINITY;
-    // find list of available actions
-    List<int[]> actionSet = this.getActionSet(state);
+  public double maxFutureRewards(GameBoard state) {
+    int count = this.canonicalCandidates(state);
+    if (count == 0) {
+      return 0;
+    }
+    return this.qTable.getMax(this.canonicalHash, this.cells, count);
+  }
 
-    Double qvalue = 0.0;
-    // loop through available action and return maximum Q value found
-    for (int[] move : actionSet) {
-      qvalue = this.getqValue(state, move);
-      maxQ = Math.max(qvalue, maxQ);
+  /**
+   * Find the canonical orientation of a state, and fill the cell buffer with the moves possible in
+   * the state, mapped into that orientation.
+   *
+   * @param state   state of board
+   * @return        number of moves possible
+   */
+  private int canonicalCandidates(GameBoard state) {
+    int dimension = state.getBoardDimension();
+    if (this.cells.length != dimension * dimension) {
+      this.cells = new int[dimension * dimension];
+      this.wholeBoard = new BoardSubset(0, dimension - 1, 0, dimension - 1);
+    }
+    this.canonicalize(state);
+    int count = state.getCandidateCells(this.wholeBoard, this.cells);
+    for (int i = 0; i < count; i++) {
+      this.cells[i] = this.canonicalMove(this.cells[i] / dimension, this.cells[i] % dimension,
+              dimension);
     }
-    return maxQ;
+    return count;
   }
 
   /**
@@ -120,7 +341,7 @@ public class TrainedAI extends AbstractAI {
 
     List<int[]> actionSet = this.getActionSet(state);
     Random rand = new Random();
-    Double maxQ = Double.NEGATIVE_INFINITY;
+    double maxQ = Double.NEGATIVE_INFINITY;
     List<int[]> optimalMove = new ArrayList<int[]>();
     double currQ;
 
@@ -0,0 +1,263 @@
+package caro.AI;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table for MinimaxAI, keyed by the Zobrist hash of a board state.
+ * Entries are stored in preallocated primitive arrays, so probing and storing never allocate.
+ * Each entry holds the remaining search depth the score was computed with, whether the score is
+ * exact or a bound, the score and the best move, and the generation of the search that stored it.
+ * Every new search starts a new generation, and entries stored by older searches can be replaced
+ * whatever their depth, so that positions from earlier moves of the game do not fill the table.
+ *
+ * <p>The table can be shared by several search threads without locks. An entry is kept in three
+ * words: the score, the packed depth/bound/move data, and a check word holding the key XORed with
+ * both. A reader only accepts an entry if the check word matches the words it read, so an entry
+ * that another thread was writing halfway through is treated as a miss instead of being mixed
+ * with another position's data.
+ */
+public class TranspositionTable {
+  public static final int DEFAULT_CAPACITY = 1 << 20;
+  public static final byte EMPTY = 0, EXACT = 1, LOWER_BOUND = 2, UPPER_BOUND = 3;
+  public static final int NO_MOVE = -1;
+
+  /**
+   * Policy deciding whether a new entry replaces the entry already stored at its index.
+   */
+  public enum ReplacementPolicy {
+    /** always keep the most recent entry. */
+    ALWAYS_REPLACE,
+    /**
+     * keep the entry searched deeper, unless the new entry is for the same position or the kept
+     * entry was stored by an earlier search.
+     */
+    DEPTH_PREFERRED
+  }
+
+  /**
+   * Holder for an entry read from the table. Callers keep one and reuse it for every probe.
+   */
+  public static class Entry {
+    private int depth;
+    private byte bound;
+    private double score;
+    private int bestMove;
+
+    /**
+     * Getter for depth.
+     *
+     * @return remaining search depth the entry's score was computed with
+     */
+    public int getDepth() {
+      return this.depth;
+    }
+
+    /**
+     * Getter for bound type.
+     *
+     * @return EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    public byte getBound() {
+      return this.bound;
+    }
+
+    /**
+     * Getter for score.
+     *
+     * @return score
+     */
+    public double getScore() {
+      return this.score;
+    }
+
+    /**
+     * Getter for best move.
+     *
+     * @return best move packed with packMove(), NO_MOVE if there is none
+     */
+    public int getBestMove() {
+      return this.bestMove;
+    }
+  }
+
+  private final int mask;
+  private final ReplacementPolicy policy;
+  private final long[] checks;
+  private final long[] scores;
+  private final long[] data;
+  // generation of the current search, stored with every entry and wrapping around after 255
+  private int generation;
+
+  /**
+   * Constructor with default capacity and depth-preferred replacement.
+   */
+  public TranspositionTable() {
+    this(DEFAULT_CAPACITY, ReplacementPolicy.DEPTH_PREFERRED);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param capacity number of entries, rounded up to a power of two
+   * @param policy   replacement policy
+   * @throws IllegalArgumentException if capacity is not positive or policy is null
+   */
+  public TranspositionTable(int capacity, ReplacementPolicy policy)
+          throws IllegalArgumentException {
+    if ((capacity <= 0) || (capacity > (1 << 30))) {
+      throw new IllegalArgumentException("Capacity is out of range.");
+    }
+    if (policy == null) {
+      throw new IllegalArgumentException("Replacement policy cannot be null.");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.mask = size - 1;
+    this.policy = policy;
+    this.checks = new long[size];
+    this.scores = new long[size];
+    this.data = new long[size];
+  }
+
+  /**
+   * Getter for capacity.
+   *
+   * @return number of entries the table can hold
+   */
+  public int getCapacity() {
+    return this.checks.length;
+  }
+
+  /**
+   * Getter for replacement policy.
+   *
+   * @return replacement policy
+   */
+  public ReplacementPolicy getPolicy() {
+    return this.policy;
+  }
+
+  /**
+   * Start a new generation of entries. Called once before each search; entries stored before are
+   * still found by probe(), but no longer kept against shallower entries.
+   */
+  public void newSearch() {
+    this.generation = (this.generation + 1) & 0xFF;
+  }
+
+  /**
+   * Find the entry stored for a position and copy it into entry.
+   *
+   * @param key   hash of position
+   * @param entry holder the entry is copied into
+   * @return true if position is stored, false if not
+   */
+  public boolean probe(long key, Entry entry) {
+    int index = (int) key & this.mask;
+    long entryData = this.data[index];
+    long entryScore = this.scores[index];
+    if ((bound(entryData) == EMPTY) || ((this.checks[index] ^ entryData ^ entryScore) != key)) {
+      return false;
+    }
+    entry.depth = depth(entryData);
+    entry.bound = bound(entryData);
+    entry.score = Double.longBitsToDouble(entryScore);
+    entry.bestMove = (int) entryData;
+    return true;
+  }
+
+  /**
+   * Store the search result of a position, subject to the replacement policy.
+   *
+   * @param key      hash of position
+   * @param depth    remaining search depth
+   * @param bound    EXACT, LOWER_BOUND or UPPER_BOUND
+   * @param score    score of position
+   * @param bestMove best move packed with packMove(), or NO_MOVE
+   */
+  public void store(long key, int depth, byte bound, double score, int bestMove) {
+    int index = (int) key & this.mask;
+    long oldData = this.data[index];
+    if ((this.policy == ReplacementPolicy.DEPTH_PREFERRED) && (bound(oldData) != EMPTY)
+            && (generation(oldData) == this.generation) && (depth(oldData) > depth)
+            && ((this.checks[index] ^ oldData ^ this.scores[index]) != key)) {
+      return;
+    }
+    long newData = ((long) this.generation << 48) | ((long) Math.min(depth, Byte.MAX_VALUE) << 40)
+            | ((long) bound << 32) | (bestMove & 0xFFFFFFFFL);
+    long newScore = Double.doubleToRawLongBits(score);
+    this.data[index] = newData;
+    this.scores[index] = newScore;
+    this.checks[index] = key ^ newData ^ newScore;
+  }
+
+  /**
+   * Remove all entries.
+   */
+  public void clear() {
+    Arrays.fill(this.data, 0L);
+  }
+
+  /**
+   * Depth stored in an entry's data word.
+   *
+   * @param entryData data word
+   * @return depth
+   */
+  private static int depth(long entryData) {
+    return (int) (entryData >>> 40) & 0xFF;
+  }
+
+  /**
+   * Search generation stored in an entry's data word.
+   *
+   * @param entryData data word
+   * @return generation
+   */
+  private static int generation(long entryData) {
+    return (int) (entryData >>> 48) & 0xFF;
+  }
+
+  /**
+   * Bound type stored in an entry's data word.
+   *
+   * @param entryData data word
+   * @return bound type
+   */
+  private static byte bound(long entryData) {
+    return (byte) (entryData >>> 32);
+  }
+
+  /**
+   * Pack a move into an int so it can be stored in the table.
+   *
+   * @param move move as {row, col}
+   * @return packed move
+   */
+  public static int packMove(int[] move) {
+    return packMove(move[0], move[1]);
+  }
+
+  /**
+   * Pack a move into an int so it can be stored in the table.
+   *
+   * @param row row of move
+   * @param col col of move
+   * @return packed move
+   */
+  public static int packMove(int row, int col) {
+    return (row << 16) | col;
+  }
+
+  /**
+   * Unpack a move stored in the table.
+   *
+   * @param packedMove move packed with packMove()
+   * @return move as {row, col}
+   */
+  public static int[] unpackMove(int packedMove) {
+    return new int[]{packedMove >>> 16, packedMove & 0xFFFF};
+  }
+}
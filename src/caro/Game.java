@@ -1,10 +1,22 @@
 package caro;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import caro.AI.AbstractAI;
+import caro.AI.ConcurrentQTable;
 import caro.AI.MinimaxAI;
+import caro.AI.ReplayBuffer;
 import caro.AI.TrainedAI;
 import caro.board.GameBoard;
 
@@ -18,6 +30,8 @@ public class Game {
   private final int boardDimension;
   public static int WIN_CONDITION = 5;
   public static char X = 'X', O = 'O', EMPTY = ' ';
+  public static int NUM_TRAINING_GAMES = 1000;
+  public static int REPLAY_BATCH_SIZE = 64;
 
   /**
    * Constructor for Game object.
@@ -172,60 +186,160 @@ public class Game {
    */
   public TrainedAI trainAi(int numGame) {
     TrainedAI ai = new TrainedAI(this.boardDimension);
+    ai.setReplayBuffer(new ReplayBuffer(this.boardDimension));
     MinimaxAI ai2 = new MinimaxAI(this.boardDimension,playerO, playerX);
+    long start = System.nanoTime();
 
-    int[] currMove =  new int[2];
-    HashMap<Player, int[]> lastMove = new HashMap<Player, int[]>();
-    HashMap<Player, GameBoard> lastState = new HashMap<Player, GameBoard>();
-    GameBoard currState, newState;
+    for (int i = 0; i < numGame; i++) {
+      System.out.println("Training game #" + (i + 1));
+      this.playTrainingGame(ai, ai2);
+    }
+    this.printTrainingRate(numGame, start);
+    return ai;
+  }
+
+  /**
+   * Train reinforcement learning AI against minimax AI, playing several training games at once.
+   * Each worker thread plays whole games with its own AIs, board and replay buffer, and all workers
+   * learn into one shared Q-table.
+   *
+   * @param numGame number of training games
+   * @param workers number of worker threads
+   * @return trained AI, using the shared Q-table
+   * @throws IllegalArgumentException if numGame is negative or workers is not positive
+   */
+  public TrainedAI trainAi(int numGame, int workers) throws IllegalArgumentException {
+    if ((numGame < 0) || (workers <= 0)) {
+      throw new IllegalArgumentException("Number of games cannot be negative and workers must be "
+              + "positive.");
+    }
+    ConcurrentQTable qTable = new ConcurrentQTable();
+    AtomicInteger gamesStarted = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    List<Future<?>> results = new ArrayList<Future<?>>();
+    long start = System.nanoTime();
+
+    for (int i = 0; i < workers; i++) {
+      results.add(pool.submit(() -> {
+        TrainedAI ai = new TrainedAI(this.boardDimension, qTable);
+        ai.setReplayBuffer(new ReplayBuffer(this.boardDimension));
+        MinimaxAI ai2 = new MinimaxAI(this.boardDimension, playerO, playerX);
+        while (gamesStarted.getAndIncrement() < numGame) {
+          this.playTrainingGame(ai, ai2);
+        }
+      }));
+    }
+    try {
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Training was interrupted.", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Training failed.", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    this.printTrainingRate(numGame, start);
+    return new TrainedAI(this.boardDimension, qTable);
+  }
 
+  /**
+   * Play one training game between reinforcement learning AI (player X) and minimax AI (player O)
+   * on a board of its own. Every move is recorded with the reinforcement learning AI, which then
+   * learns from a batch of recorded moves.
+   *
+   * @param ai  reinforcement learning AI
+   * @param ai2 minimax AI
+   */
+  private void playTrainingGame(TrainedAI ai, MinimaxAI ai2) {
+    GameBoard board = new GameBoard(this.boardDimension);
+    board.initializeBoard();
+    Player currentPlayer = playerX;
     Player aiPlayer = playerX;
 
+    int[] currMove =  new int[2];
+    int[] lastAiMove = null;
+
     //calculate maximum number of moves possible with this board size
     int maxMoves = (int) Math.pow(this.boardDimension, 2);
 
-    for (int i = 0; i < numGame; i++) {
-      System.out.println("Training game #" + (i + 1));
-      this.setUpGame();
+    // loop to get moves until run out of possible moves or a player win
+    for (int j = 0; j < maxMoves; j++) {
+      if (j == 0) {
+        currMove = new int[] {7,7};
+      }
+      else if (j % 2 == 0){
+        currMove = ai.getOptimalMove(board, currMove, false);
+      }
+      else {
+        currMove = ai2.getOptimalMove(board,currMove,false);
+      }
 
-      // loop to get moves until run out of possible moves or a player win
-      for (int j = 0; j < maxMoves; j++) {
-        currState = new GameBoard(board);
-        if (j == 0) {
-          currMove = new int[] {7,7};
-        }
-        else if (j % 2 == 0){
-          currMove = ai.getOptimalMove(this.board, currMove, false);
+      board.addMove(currMove, currentPlayer.getSymbol());
+
+      if (board.checkWinningMove(currMove)) {
+        if (currentPlayer == aiPlayer)
+        {
+          ai.record(board, currMove, 1.0);
         }
         else {
-          currMove = ai2.getOptimalMove(this.board,currMove,false);
+          // take back the winning move, so that the AI's last move is penalized in the state it
+          // left to the opponent
+          board.unmakeMove();
+          ai.record(board, lastAiMove, -1.0);
         }
 
-        lastState.put(currentPlayer, currState);
-        lastMove.put(currentPlayer, currMove);
-
-        board.addMove(currMove, this.currentPlayer.getSymbol());
-        newState = new GameBoard(board);
+        break;
+      } else {
+        ai.record(board, currMove, 0.0);
+      }
+      if (currentPlayer == aiPlayer) {
+        lastAiMove = currMove;
+      }
+      currentPlayer = (currentPlayer == playerX) ? playerO : playerX;
+    }
+    ai.replay(REPLAY_BATCH_SIZE);
+  }
 
-        if (this.board.checkWinningMove(currMove)) {
-          if (this.board.returnPosition(currMove) == aiPlayer.getSymbol())
-          {
-            ai.update(currState, currMove, newState, 1.0);
-          }
-          else {
-            ai.update(lastState.get(aiPlayer), lastMove.get(aiPlayer), currState, -1.0);
-          }
+  /**
+   * Print how long training took and how many games were played per second.
+   *
+   * @param numGame number of training games
+   * @param start   System.nanoTime() when training started
+   */
+  private void printTrainingRate(int numGame, long start) {
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("Training done! %d games in %.1f s (%.1f games/sec)%n", numGame, seconds,
+            numGame / seconds);
+  }
 
-          break;
-        } else {
-          if (lastState.get(currentPlayer) != null) {
-            ai.update(currState, currMove, newState, 0.0);
-          }
-        }
-        switchPlayer();
+  /**
+   * Get a trained AI for this board dimension. The Q-table is loaded from its snapshot file if one
+   * was saved before; otherwise the AI is trained and its table saved for the next game.
+   *
+   * @return trained AI
+   */
+  public TrainedAI loadTrainedAi() {
+    Path snapshot = Paths.get("caro-" + this.boardDimension + "x" + this.boardDimension
+            + ".qtable");
+    if (Files.exists(snapshot)) {
+      TrainedAI ai = new TrainedAI(this.boardDimension);
+      try {
+        ai.loadQTable(snapshot);
+        System.out.println("Loaded trained AI from " + snapshot);
+        return ai;
+      } catch (IOException e) {
+        System.out.println("Could not load " + snapshot + ": " + e.getMessage());
       }
     }
-    System.out.println("Training done!");
+    TrainedAI ai = this.trainAi(NUM_TRAINING_GAMES, Runtime.getRuntime().availableProcessors());
+    try {
+      ai.saveQTable(snapshot);
+    } catch (IOException e) {
+      System.out.println("Could not save " + snapshot + ": " + e.getMessage());
+    }
     return ai;
   }
 
@@ -236,7 +350,7 @@ public class Game {
     int[] currMove = new int[0];
     Player aiPlayer = playerX;
     Player humanPlayer = playerO;
-    TrainedAI ai = this.trainAi(1000);
+    TrainedAI ai = this.loadTrainedAi();
 
     //calculate maximum number of moves possible with this board size
     int maxMoves = (int) Math.pow(this.boardDimension, 2);
@@ -3,8 +3,7 @@ package caro.board;
 import caro.Game;
 import caro.Player;
 import caro.streak.StreakList;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 
 /**
@@ -12,8 +11,46 @@ import java.util.List;
  */
 public class GameBoard {
   public static final int MINDIM = 5, MAXDIM = 99;
+  private static final int LINE_CACHE_SIZE = 1 << 10;
+  // line directions used to index the bitboards
+  static final int HORIZONTAL = 0, VERTICAL = 1, DIAGONAL = 2, ANTI_DIAGONAL = 3;
+  private static final int NUM_DIRECTIONS = 4, NUM_PLAYERS = 2;
   private final int boardDimension; //number of columns/rows of board
   private final char[][] board;
+  /* bitboards, indexed [player slot][direction][line][word]. Each line (row, column, diagonal or
+  anti-diagonal) is packed into longs, one bit per cell, so that streaks can be detected with
+  word-wide shifts and masks instead of cell-by-cell scanning. */
+  private final long[][][][] lineBits;
+  private final char[] slotSymbols;
+  private int emptyCount;
+  // cells (row * boardDimension + col) of moves made on board, in order
+  private final int[] moveStack;
+  private int moveCount;
+  // Zobrist hash of position, updated incrementally whenever a move is made or taken back
+  private long hash;
+  /* hashes of the position's 8 rotations and reflections, computed on request for the position
+  whose hash is symmetryHashesKey; only learning AIs need them, so moves made in search do not
+  pay for keeping them up to date */
+  private long[] symmetryHashes;
+  private long symmetryHashesKey;
+  /* candidate frontier: number of moves adjacent to each cell, and one bit per row word for every
+  empty cell adjacent to at least one move, kept up to date as moves are made and taken back */
+  private final int[][] neighborCount;
+  private final long[][] frontierBits;
+  private int frontierSize;
+  /* streak counts, laid out as in StreakList(int[]): per player slot and line, and totals per
+  player slot. Only the four lines through a move are rescanned when it is made or taken back. */
+  private final int[][][][] lineStreaks;
+  private final int[][] streakTotals;
+  // Zobrist hash of the moves on each line, indexed [direction][line]
+  private final long[][] lineHashes;
+  /* cache of the streak counts of both players on a line, keyed by line hash, so that a line whose
+  contents were seen before (e.g. when a move is taken back) is not rescanned. Allocated with the
+  first move made, since many copies of a board are never played on. */
+  private long[] lineCacheKeys;
+  private int[] lineCacheCounts;
+  // fives, fours and open threes of both players, updated with the streak counts
+  private final ThreatIndex threats;
 
   /**
    * Constructor for GameBoard.
@@ -29,6 +66,38 @@ public class GameBoard {
     }
     this.boardDimension = boardDimension;
     this.board = new char[boardDimension][boardDimension];
+    this.slotSymbols = new char[NUM_PLAYERS];
+    Arrays.fill(this.slotSymbols, Game.EMPTY);
+    int words = ((boardDimension - 1) >>> 6) + 1;
+    int diagonals = 2 * boardDimension - 1;
+    this.lineBits = new long[NUM_PLAYERS][NUM_DIRECTIONS][][];
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      this.lineBits[slot][HORIZONTAL] = new long[boardDimension][words];
+      this.lineBits[slot][VERTICAL] = new long[boardDimension][words];
+      this.lineBits[slot][DIAGONAL] = new long[diagonals][words];
+      this.lineBits[slot][ANTI_DIAGONAL] = new long[diagonals][words];
+    }
+    // cells of a new board are not EMPTY until initializeBoard() is called
+    this.emptyCount = 0;
+    this.moveStack = new int[boardDimension * boardDimension];
+    this.moveCount = 0;
+    this.neighborCount = new int[boardDimension][boardDimension];
+    this.frontierBits = new long[boardDimension][words];
+    int streakFields = StreakList.getCountsLength();
+    this.lineStreaks = new int[NUM_PLAYERS][NUM_DIRECTIONS][][];
+    this.streakTotals = new int[NUM_PLAYERS][streakFields];
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      this.lineStreaks[slot][HORIZONTAL] = new int[boardDimension][streakFields];
+      this.lineStreaks[slot][VERTICAL] = new int[boardDimension][streakFields];
+      this.lineStreaks[slot][DIAGONAL] = new int[diagonals][streakFields];
+      this.lineStreaks[slot][ANTI_DIAGONAL] = new int[diagonals][streakFields];
+    }
+    this.lineHashes = new long[NUM_DIRECTIONS][];
+    this.lineHashes[HORIZONTAL] = new long[boardDimension];
+    this.lineHashes[VERTICAL] = new long[boardDimension];
+    this.lineHashes[DIAGONAL] = new long[diagonals];
+    this.lineHashes[ANTI_DIAGONAL] = new long[diagonals];
+    this.threats = new ThreatIndex(boardDimension);
   }
 
   /**
@@ -41,6 +110,29 @@ public class GameBoard {
     for (int i = 0; i < other.getBoardDimension(); i++) {
       this.board[i] = other.board[i].clone();
     }
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      this.slotSymbols[slot] = other.slotSymbols[slot];
+      for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+        for (int line = 0; line < other.lineBits[slot][dir].length; line++) {
+          this.lineBits[slot][dir][line] = other.lineBits[slot][dir][line].clone();
+          this.lineStreaks[slot][dir][line] = other.lineStreaks[slot][dir][line].clone();
+        }
+      }
+      this.streakTotals[slot] = other.streakTotals[slot].clone();
+    }
+    for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+      this.lineHashes[dir] = other.lineHashes[dir].clone();
+    }
+    this.threats.copyFrom(other.threats);
+    this.emptyCount = other.emptyCount;
+    System.arraycopy(other.moveStack, 0, this.moveStack, 0, other.moveCount);
+    this.moveCount = other.moveCount;
+    this.hash = other.hash;
+    for (int row = 0; row < this.boardDimension; row++) {
+      this.neighborCount[row] = other.neighborCount[row].clone();
+      this.frontierBits[row] = other.frontierBits[row].clone();
+    }
+    this.frontierSize = other.frontierSize;
   }
 
   /**
@@ -61,22 +153,130 @@ public class GameBoard {
         this.board[row][col] = Game.EMPTY;
       }
     }
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      this.slotSymbols[slot] = Game.EMPTY;
+      for (long[][] lines : this.lineBits[slot]) {
+        for (long[] line : lines) {
+          Arrays.fill(line, 0L);
+        }
+      }
+      for (int[][] lines : this.lineStreaks[slot]) {
+        for (int[] line : lines) {
+          Arrays.fill(line, 0);
+        }
+      }
+      Arrays.fill(this.streakTotals[slot], 0);
+    }
+    for (long[] hashes : this.lineHashes) {
+      Arrays.fill(hashes, 0L);
+    }
+    this.threats.clear();
+    this.emptyCount = this.boardDimension * this.boardDimension;
+    this.moveCount = 0;
+    this.hash = 0L;
+    for (int row = 0; row < this.boardDimension; row++) {
+      Arrays.fill(this.neighborCount[row], 0);
+      Arrays.fill(this.frontierBits[row], 0L);
+    }
+    this.frontierSize = 0;
   }
 
   /**
-   * Check if the board is out of moves (filled with non-blank symbol).
+   * Getter for the Zobrist hash of the current position.
+   * Equal positions always have equal hashes, and the hash is updated in O(1) per move.
    *
-   * @return true if board is filled, false if not
+   * @return 64-bit hash of position
    */
-  public boolean isOutOfMoves() {
-    for (int row = 0; row < this.getBoardDimension(); row++) {
-      for (int col = 0; col < this.getBoardDimension(); col++) {
-        if (this.isEmpty(row, col)) {
-          return false;
+  public long getHash() {
+    return this.hash;
+  }
+
+  /**
+   * Getter for the Zobrist hash of the current position transformed by a symmetry, that is the hash
+   * a board holding the rotated or reflected position would have. The hashes of all symmetries are
+   * computed together from the moves on board, and kept until the position changes.
+   *
+   * @param symmetry symmetry, 0 to Symmetry.NUM_SYMMETRIES - 1
+   * @return 64-bit hash of transformed position
+   * @throws IllegalArgumentException if symmetry is out of range
+   */
+  public long getSymmetryHash(int symmetry) throws IllegalArgumentException {
+    if ((symmetry < 0) || (symmetry >= Symmetry.NUM_SYMMETRIES)) {
+      throw new IllegalArgumentException("Symmetry is out of range.");
+    }
+    if (this.symmetryHashes == null) {
+      this.symmetryHashes = new long[Symmetry.NUM_SYMMETRIES];
+      this.symmetryHashesKey = ~this.hash;
+    }
+    if (this.symmetryHashesKey != this.hash) {
+      Arrays.fill(this.symmetryHashes, 0L);
+      for (int i = 0; i < this.moveCount; i++) {
+        int row = this.moveStack[i] / this.boardDimension;
+        int col = this.moveStack[i] % this.boardDimension;
+        for (int t = 0; t < Symmetry.NUM_SYMMETRIES; t++) {
+          this.symmetryHashes[t] ^= zobristKey(this.board[row][col],
+                  Symmetry.transform(t, row, col, this.boardDimension));
         }
       }
+      this.symmetryHashesKey = this.hash;
     }
-    return true;
+    return this.symmetryHashes[symmetry];
+  }
+
+  /**
+   * Random-looking 64-bit key for a symbol placed on a cell. Keys are derived from the symbol
+   * itself rather than its bitboard slot, so that the same position always has the same hash.
+   *
+   * @param symbol player symbol
+   * @param cell   cell index (row * boardDimension + col)
+   * @return Zobrist key
+   */
+  private static long zobristKey(char symbol, int cell) {
+    // SplitMix64 finalizer
+    long z = (((long) symbol << 32) | cell) + 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Two boards are equal if they have the same dimension and the same symbol on every position.
+   *
+   * @param o object to be compared
+   * @return true if equal, false if not
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof GameBoard)) {
+      return false;
+    }
+    GameBoard other = (GameBoard) o;
+    // compare hashes first so that different positions are usually rejected in O(1)
+    return ((this.boardDimension == other.boardDimension) && (this.hash == other.hash)
+            && Arrays.deepEquals(this.board, other.board));
+  }
+
+  /**
+   * Hash code derived from the Zobrist hash of the position.
+   *
+   * @return hash code
+   */
+  @Override
+  public int hashCode() {
+    return Long.hashCode(this.hash);
+  }
+
+  /**
+   * Check if the board is out of moves (filled with non-blank symbol).
+   * The number of empty cells is kept up to date by addMove(), so no scan is needed.
+   *
+   * @return true if board is filled, false if not
+   */
+  public boolean isOutOfMoves() {
+    return (this.emptyCount == 0);
   }
 
   /**
@@ -174,7 +374,12 @@ public class GameBoard {
     }
     // if move is legal, add symbol to board
     if (this.isLegalMove(row, col)) {
-      this.board[row][col] = symbol;
+      int slot = this.getSlot(symbol);
+      if (slot < 0) {
+        System.out.println("Board only supports two player symbols.\n");
+        return false;
+      }
+      this.placeMove(row, col, slot, symbol);
       return true;
     } else {
       return false;
@@ -192,6 +397,562 @@ public class GameBoard {
     return addMove(move[0], move[1], symbol);
   }
 
+  /**
+   * Make a move in place during search. The move is pushed on the move stack so that it can be
+   * taken back with unmakeMove(), which avoids copying the board for every searched position.
+   *
+   * @param move   position where the move will be made
+   * @param player player making the move
+   * @throws IllegalArgumentException if move is illegal with current board state
+   */
+  public void makeMove(int[] move, Player player) throws IllegalArgumentException {
+    int slot = this.isLegalMove(move) ? this.getSlot(player.getSymbol()) : -1;
+    if (slot < 0) {
+      throw new IllegalArgumentException("Invalid move");
+    }
+    this.placeMove(move[0], move[1], slot, player.getSymbol());
+  }
+
+  /**
+   * Take back the last move made on board, restoring the board state before it.
+   *
+   * @throws IllegalStateException if no move has been made
+   */
+  public void unmakeMove() throws IllegalStateException {
+    if (this.moveCount == 0) {
+      throw new IllegalStateException("No move to take back.");
+    }
+    int cell = this.moveStack[--this.moveCount];
+    int row = cell / this.boardDimension;
+    int col = cell % this.boardDimension;
+    this.clearBit(this.findSlot(this.board[row][col]), row, col);
+    long key = zobristKey(this.board[row][col], cell);
+    this.hash ^= key;
+    this.board[row][col] = Game.EMPTY;
+    this.emptyCount++;
+    this.updateFrontier(row, col, -1);
+    this.updateStreaks(row, col, key);
+  }
+
+  /**
+   * Getter for number of moves on the move stack.
+   *
+   * @return number of moves made since board was initialized
+   */
+  public int getMoveCount() {
+    return this.moveCount;
+  }
+
+  /**
+   * Getter for the last move on the move stack.
+   *
+   * @return position of the move, null if no move has been made
+   */
+  public int[] getLastMove() {
+    if (this.moveCount == 0) {
+      return null;
+    }
+    int cell = this.moveStack[this.moveCount - 1];
+    return new int[]{cell / this.boardDimension, cell % this.boardDimension};
+  }
+
+  /**
+   * Put a symbol on an empty position and record it on the move stack.
+   *
+   * @param row    row of position
+   * @param col    col of position
+   * @param slot   bitboard slot of symbol
+   * @param symbol player symbol
+   */
+  private void placeMove(int row, int col, int slot, char symbol) {
+    this.board[row][col] = symbol;
+    this.setBit(slot, row, col);
+    this.emptyCount--;
+    int cell = row * this.boardDimension + col;
+    this.moveStack[this.moveCount++] = cell;
+    long key = zobristKey(symbol, cell);
+    this.hash ^= key;
+    this.updateFrontier(row, col, 1);
+    this.updateStreaks(row, col, key);
+  }
+
+  /**
+   * Update the four lines through a position after a move is added to or removed from it, replacing
+   * their old streak counts in the totals of both players with the new ones.
+   *
+   * @param row     row of position
+   * @param col     col of position
+   * @param moveKey Zobrist key of the move
+   */
+  private void updateStreaks(int row, int col, long moveKey) {
+    for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+      int line = this.lineIndex(dir, row, col);
+      this.lineHashes[dir][line] ^= moveKey;
+      // checkBoardForStreaks() has always skipped diagonals too short to hold a winning streak
+      if (this.lineLength(dir, line) < Game.WIN_CONDITION) {
+        continue;
+      }
+      for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+        int[] counts = this.lineStreaks[slot][dir][line];
+        for (int i = 0; i < counts.length; i++) {
+          this.streakTotals[slot][i] -= counts[i];
+        }
+      }
+      this.loadLineStreaks(dir, line);
+      for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+        int[] counts = this.lineStreaks[slot][dir][line];
+        for (int i = 0; i < counts.length; i++) {
+          this.streakTotals[slot][i] += counts[i];
+        }
+      }
+      this.threats.markChanged(dir, line);
+    }
+  }
+
+  /**
+   * Set the line streak counts of both players on a line, from the line cache if the line's contents
+   * are cached and by rescanning the line if not. Two different cells share at most one line, so a
+   * line hash with two or more moves belongs to a single line, and lines with fewer moves have no
+   * streaks, which makes the line hash alone a sufficient cache key.
+   *
+   * @param dir  direction of line
+   * @param line line index
+   */
+  private void loadLineStreaks(int dir, int line) {
+    int fields = this.streakTotals[0].length;
+    if (this.lineCacheKeys == null) {
+      this.lineCacheKeys = new long[LINE_CACHE_SIZE];
+      this.lineCacheCounts = new int[LINE_CACHE_SIZE * NUM_PLAYERS * fields];
+    }
+    long key = this.lineHashes[dir][line];
+    int index = (int) (key ^ (key >>> 32)) & (LINE_CACHE_SIZE - 1);
+    int offset = index * NUM_PLAYERS * fields;
+    if ((key != 0L) && (this.lineCacheKeys[index] == key)) {
+      for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+        System.arraycopy(this.lineCacheCounts, offset + slot * fields,
+                this.lineStreaks[slot][dir][line], 0, fields);
+      }
+      return;
+    }
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      Arrays.fill(this.lineStreaks[slot][dir][line], 0);
+    }
+    this.scanLineForStreaks(dir, line);
+    this.lineCacheKeys[index] = key;
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      System.arraycopy(this.lineStreaks[slot][dir][line], 0, this.lineCacheCounts,
+              offset + slot * fields, fields);
+    }
+  }
+
+  /**
+   * Count the streak shapes of both players on a line into their line streak counts.
+   *
+   * @param dir  direction of line
+   * @param line line index
+   */
+  private void scanLineForStreaks(int dir, int line) {
+    int from = this.lineStart(dir, line);
+    int to = from + this.lineLength(dir, line);
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      addShapes(this.lineBits[slot][dir][line], this.lineBits[NUM_PLAYERS - 1 - slot][dir][line],
+              from, to, this.lineStreaks[slot][dir][line]);
+    }
+  }
+
+  /**
+   * Add the streak shapes of a player on a line to streak counts, reading each shape from
+   * ShapeTable instead of walking the line cell by cell.
+   *
+   * @param own     packed line with the player's stones
+   * @param blocked packed line with the opponent's stones
+   * @param from    bit position of first cell of line
+   * @param to      bit position after last cell of line
+   * @param counts  streak counts laid out as in StreakList(int[]), added to
+   */
+  private static void addShapes(long[] own, long[] blocked, int from, int to, int[] counts) {
+    for (int pos = nextSetBit(own, from, to); pos >= 0; pos = nextSetBit(own, pos, to)) {
+      // window starts at the cell before the streak, cells off the line count as blocked
+      int start = pos - 1;
+      long onLine = (-1L << Math.max(0, from - start))
+              & (((to - start) >= 64) ? -1L : ((1L << (to - start)) - 1));
+      long blockedBits = window(blocked, start) | ~onLine;
+      int shape = ShapeTable.lookup(window(own, start), blockedBits);
+      if (shape == ShapeTable.LONG_RUN) {
+        int end = nextClearBit(own, pos, to);
+        boolean endBlocked = (end == to) || ((window(blocked, end) & 1L) != 0);
+        StreakList.addStreak(counts, end - pos, (int) (blockedBits & 1L) + (endBlocked ? 1 : 0));
+        pos = end;
+      } else {
+        StreakList.addStreak(counts, ShapeTable.getStones(shape), ShapeTable.getBlockMarker(shape));
+        pos += ShapeTable.getSpan(shape);
+      }
+    }
+  }
+
+  /**
+   * Find the first set bit of a packed line within [from, to).
+   *
+   * @param line packed line
+   * @param from first bit position
+   * @param to   bit position after range
+   * @return position of bit, -1 if there is none
+   */
+  static int nextSetBit(long[] line, int from, int to) {
+    for (int pos = from; pos < to; pos += 64) {
+      long bits = window(line, pos);
+      if (bits != 0) {
+        int found = pos + Long.numberOfTrailingZeros(bits);
+        return (found < to) ? found : -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Find the first unset bit of a packed line within [from, to).
+   *
+   * @param line packed line
+   * @param from first bit position
+   * @param to   bit position after range
+   * @return position of bit, to if there is none
+   */
+  static int nextClearBit(long[] line, int from, int to) {
+    for (int pos = from; pos < to; pos += 64) {
+      long bits = ~window(line, pos);
+      if (bits != 0) {
+        return Math.min(to, pos + Long.numberOfTrailingZeros(bits));
+      }
+    }
+    return to;
+  }
+
+  /**
+   * Update the candidate frontier after a move is added to or removed from a position.
+   *
+   * @param row   row of position
+   * @param col   col of position
+   * @param delta 1 if a move was added, -1 if a move was removed
+   */
+  private void updateFrontier(int row, int col, int delta) {
+    int above = Math.max(0, row - 1);
+    int below = Math.min(this.boardDimension - 1, row + 1);
+    int left = Math.max(0, col - 1);
+    int right = Math.min(this.boardDimension - 1, col + 1);
+    for (int r = above; r <= below; r++) {
+      for (int c = left; c <= right; c++) {
+        if ((r != row) || (c != col)) {
+          this.neighborCount[r][c] += delta;
+        }
+        this.updateFrontierBit(r, c);
+      }
+    }
+  }
+
+  /**
+   * Set the frontier bit of a position if it is empty and adjacent to a move, clear it otherwise.
+   *
+   * @param row row of position
+   * @param col col of position
+   */
+  private void updateFrontierBit(int row, int col) {
+    long bit = 1L << col;
+    boolean wasCandidate = (this.frontierBits[row][col >>> 6] & bit) != 0;
+    boolean isCandidate = (this.board[row][col] == Game.EMPTY)
+            && (this.neighborCount[row][col] > 0);
+    if (isCandidate && !wasCandidate) {
+      this.frontierBits[row][col >>> 6] |= bit;
+      this.frontierSize++;
+    } else if (!isCandidate && wasCandidate) {
+      this.frontierBits[row][col >>> 6] &= ~bit;
+      this.frontierSize--;
+    }
+  }
+
+  /**
+   * Getter for number of empty positions adjacent to at least one move.
+   *
+   * @return size of candidate frontier
+   */
+  public int getFrontierSize() {
+    return this.frontierSize;
+  }
+
+  /**
+   * Collect the empty positions adjacent to at least one move within a board subset, in row-major
+   * order. Positions are read from the candidate frontier, so the cost grows with the number of
+   * candidates rather than with the area of the subset.
+   *
+   * @param search board subset to search within
+   * @param cells  filled with cells (row * boardDimension + col) of candidates, must hold at
+   *               least getFrontierSize() cells
+   * @return number of candidates found
+   */
+  public int getCandidateCells(BoardSubset search, int[] cells) {
+    int count = 0;
+    int left = search.getLeftCol();
+    int right = Math.min(search.getRightCol(), this.boardDimension - 1);
+    for (int row = search.getTopRow(); row <= Math.min(search.getBotRow(),
+            this.boardDimension - 1); row++) {
+      for (int word = left >>> 6; word <= (right >>> 6); word++) {
+        long bits = this.frontierBits[row][word];
+        // mask out columns outside of [left, right]
+        if (word == (left >>> 6)) {
+          bits &= (-1L << left);
+        }
+        if (word == (right >>> 6)) {
+          bits &= (-1L >>> (63 - (right & 63)));
+        }
+        while (bits != 0) {
+          int col = (word << 6) + Long.numberOfTrailingZeros(bits);
+          cells[count++] = row * this.boardDimension + col;
+          bits &= bits - 1;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Getter for number of threats of a type a player has on board.
+   *
+   * @param player player whose threats are counted
+   * @param threat ThreatIndex.FIVE, OPEN_FOUR, FOUR or OPEN_THREE
+   * @return number of threats
+   */
+  public int getThreatCount(Player player, int threat) {
+    int slot = this.findSlot(player.getSymbol());
+    if (slot < 0) {
+      return 0;
+    }
+    this.threats.refresh(this);
+    return this.threats.getThreatCount(slot, threat);
+  }
+
+  /**
+   * Getter for number of threat cells of a kind a player has on board.
+   *
+   * @param player player whose threat cells are counted
+   * @param kind   ThreatIndex.FIVE_GAIN, FOUR_GAIN or THREE_COST
+   * @return number of cells
+   */
+  public int getThreatCellCount(Player player, int kind) {
+    int slot = this.findSlot(player.getSymbol());
+    if (slot < 0) {
+      return 0;
+    }
+    this.threats.refresh(this);
+    return this.threats.getThreatCellCount(slot, kind);
+  }
+
+  /**
+   * Check whether a cell is a threat cell of a kind for a player.
+   *
+   * @param player player whose threat cells are checked
+   * @param kind   ThreatIndex.FIVE_GAIN, FOUR_GAIN, THREE_COST, FOUR_MOVE or THREE_MOVE
+   * @param row    row of cell
+   * @param col    column of cell
+   * @return true if cell is a threat cell of kind, false if not
+   */
+  public boolean isThreatCell(Player player, int kind, int row, int col) {
+    int slot = this.findSlot(player.getSymbol());
+    if (slot < 0) {
+      return false;
+    }
+    this.threats.refresh(this);
+    return this.threats.isThreatCell(slot, kind, row * this.boardDimension + col);
+  }
+
+  /**
+   * Collect the threat cells of a kind a player has on board, in row-major order. The threat index
+   * is kept up to date as moves are made and taken back, so the board is not scanned.
+   *
+   * @param player player whose threat cells are collected
+   * @param kind   ThreatIndex.FIVE_GAIN, FOUR_GAIN or THREE_COST
+   * @param cells  filled with cells (row * boardDimension + col), must hold at least
+   *               getThreatCellCount() cells
+   * @return number of cells found
+   */
+  public int getThreatCells(Player player, int kind, int[] cells) {
+    int slot = this.findSlot(player.getSymbol());
+    if (slot < 0) {
+      return 0;
+    }
+    this.threats.refresh(this);
+    return this.threats.getThreatCells(slot, kind, cells);
+  }
+
+  /**
+   * Find the bitboard slot of a player symbol, claiming a free slot if the symbol is new.
+   *
+   * @param symbol player symbol
+   * @return slot index, -1 if both slots are taken by other symbols
+   */
+  private int getSlot(char symbol) {
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      if (this.slotSymbols[slot] == symbol) {
+        return slot;
+      }
+      if (this.slotSymbols[slot] == Game.EMPTY) {
+        this.slotSymbols[slot] = symbol;
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Find the bitboard slot of a player symbol already on board.
+   *
+   * @param symbol player symbol
+   * @return slot index, -1 if symbol has no slot
+   */
+  private int findSlot(char symbol) {
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      if ((this.slotSymbols[slot] == symbol) && (symbol != Game.EMPTY)) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Set the bit of a position in all four line views of a player's bitboard.
+   *
+   * @param slot player slot
+   * @param row  row of position
+   * @param col  col of position
+   */
+  private void setBit(int slot, int row, int col) {
+    for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+      int pos = linePosition(dir, row, col);
+      this.lineBits[slot][dir][lineIndex(dir, row, col)][pos >>> 6] |= (1L << pos);
+    }
+  }
+
+  /**
+   * Clear the bit of a position in all four line views of a player's bitboard.
+   *
+   * @param slot player slot
+   * @param row  row of position
+   * @param col  col of position
+   */
+  private void clearBit(int slot, int row, int col) {
+    for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+      int pos = linePosition(dir, row, col);
+      this.lineBits[slot][dir][lineIndex(dir, row, col)][pos >>> 6] &= ~(1L << pos);
+    }
+  }
+
+  /**
+   * Index of the line in direction dir that passes through a position.
+   *
+   * @param dir direction of line
+   * @param row row of position
+   * @param col col of position
+   * @return line index
+   */
+  private int lineIndex(int dir, int row, int col) {
+    switch (dir) {
+      case HORIZONTAL:
+        return row;
+      case VERTICAL:
+        return col;
+      case DIAGONAL:
+        return row - col + this.boardDimension - 1;
+      default:
+        return row + col;
+    }
+  }
+
+  /**
+   * Getter for the packed line of a player slot.
+   *
+   * @param slot player slot
+   * @param dir  direction of line
+   * @param line line index
+   * @return packed line
+   */
+  long[] getLineBits(int slot, int dir, int line) {
+    return this.lineBits[slot][dir][line];
+  }
+
+  /**
+   * Getter for the hash of a line's contents, 0 for an empty line.
+   *
+   * @param dir  direction of line
+   * @param line line index
+   * @return line hash
+   */
+  long getLineHash(int dir, int line) {
+    return this.lineHashes[dir][line];
+  }
+
+  /**
+   * Bit position of the first cell on the line with index line in direction dir.
+   *
+   * @param dir  direction of line
+   * @param line line index
+   * @return bit position of first cell
+   */
+  int lineStart(int dir, int line) {
+    switch (dir) {
+      case DIAGONAL:
+        return Math.max(0, (this.boardDimension - 1) - line);
+      case ANTI_DIAGONAL:
+        return Math.max(0, line - (this.boardDimension - 1));
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Number of cells on the line with index line in direction dir.
+   *
+   * @param dir  direction of line
+   * @param line line index
+   * @return length of line
+   */
+  int lineLength(int dir, int line) {
+    if ((dir == HORIZONTAL) || (dir == VERTICAL)) {
+      return this.boardDimension;
+    }
+    return this.boardDimension - Math.abs(line - (this.boardDimension - 1));
+  }
+
+  /**
+   * Bit position of a cell within its line in direction dir. Cells on a diagonal are indexed by
+   * column, so that consecutive cells along every line have consecutive bits.
+   *
+   * @param dir direction of line
+   * @param row row of position
+   * @param col col of position
+   * @return bit position within line
+   */
+  private static int linePosition(int dir, int row, int col) {
+    return (dir == VERTICAL) ? row : col;
+  }
+
+  /**
+   * Read 64 consecutive bits of a line, starting from bit position start. Positions off the line
+   * read as 0.
+   *
+   * @param line  packed line
+   * @param start first bit position, may be negative
+   * @return bits [start, start + 64) of line
+   */
+  static long window(long[] line, int start) {
+    if (start < 0) {
+      return (start <= -64) ? 0L : (window(line, 0) << -start);
+    }
+    int word = start >>> 6, offset = start & 63;
+    long bits = (word < line.length) ? (line[word] >>> offset) : 0L;
+    if ((offset != 0) && (word + 1 < line.length)) {
+      bits |= line[word + 1] << (64 - offset);
+    }
+    return bits;
+  }
+
   /**
    * Check if a position is adjacent to any move currently on board.
    *
@@ -203,15 +964,7 @@ public class GameBoard {
    */
   public boolean isDisconnected(int row, int col) {
     if (this.isLegalMove(row, col)) {
-      int above = Math.max(0, row - 1);
-      int below = Math.min(this.boardDimension - 1, row + 1);
-      int left = Math.max(0, col - 1);
-      int right = Math.min(this.boardDimension - 1, col + 1);
-
-      return ((this.isEmpty(above, left)) && (this.isEmpty(above, col))
-              && (this.isEmpty(above, right)) && (this.isEmpty(row, left))
-              && (this.isEmpty(row, right)) && (this.isEmpty(below, left))
-              && (this.isEmpty(below, col)) && (this.isEmpty(below, right)));
+      return (this.neighborCount[row][col] == 0);
     }
     return true;
   }
@@ -450,7 +1203,25 @@ public class GameBoard {
    * @return true if win condition is met, false if not
    */
   public boolean checkWinningMove(int[] lastMove) {
-    return (this.checkMaximumConsecutive(lastMove) >= Game.WIN_CONDITION);
+    int slot = this.findSlot(this.returnPosition(lastMove));
+    if (slot < 0) {
+      return (this.checkMaximumConsecutive(lastMove) >= Game.WIN_CONDITION);
+    }
+    int reach = Game.WIN_CONDITION - 1;
+    // mask of the cells within reach of the move on either side, centered at bit reach
+    long mask = (1L << (2 * reach + 1)) - 1;
+    for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+      long bits = this.moveWindow(slot, dir, lastMove) & mask;
+      // a bit survives the shift-and-mask only if it starts WIN_CONDITION consecutive bits
+      long run = bits;
+      for (int shift = 1; shift <= reach; shift++) {
+        run &= (bits >>> shift);
+      }
+      if (run != 0) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
@@ -460,6 +1231,44 @@ public class GameBoard {
    * @return longest streak length containing last move
    */
   public int checkMaximumConsecutive(int[] lastMove) {
+    int slot = this.findSlot(this.returnPosition(lastMove));
+    if (slot < 0) {
+      return this.checkMaximumConsecutiveInRange(lastMove);
+    }
+    int reach = Game.WIN_CONDITION - 1;
+    int max = 0;
+    for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+      long bits = this.moveWindow(slot, dir, lastMove);
+      // count set bits above and below the move, stopping at the first unset bit
+      int above = Math.min(reach, Long.numberOfTrailingZeros(~(bits >>> (reach + 1))));
+      int below = Math.min(reach, Long.numberOfLeadingZeros(~(bits << (64 - reach))));
+      max = Math.max(max, above + below + 1);
+    }
+    return max;
+  }
+
+  /**
+   * Read the bits of a player's line through a move, with the move at bit WIN_CONDITION - 1.
+   *
+   * @param slot player slot
+   * @param dir  direction of line
+   * @param move move on the line
+   * @return window of the line centered around move
+   */
+  private long moveWindow(int slot, int dir, int[] move) {
+    int pos = linePosition(dir, move[0], move[1]);
+    return window(this.lineBits[slot][dir][this.lineIndex(dir, move[0], move[1])],
+            pos - (Game.WIN_CONDITION - 1));
+  }
+
+  /**
+   * Find the longest streak length the last move was a part of by scanning the board cell by cell.
+   * Used for positions that hold no player symbol.
+   *
+   * @param lastMove last move made on board
+   * @return longest streak length containing last move
+   */
+  private int checkMaximumConsecutiveInRange(int[] lastMove) {
     BoardSubset range = new BoardSubset(lastMove, this.getBoardDimension(), Game.WIN_CONDITION);
     return Math.max(Math.max(this.checkConsecutiveHorizontal(lastMove, range),
             this.checkConsecutiveVertical(lastMove, range)),
@@ -485,9 +1294,21 @@ public class GameBoard {
    * @return max number of time the symbol appears consecutively
    */
   public StreakList countConsecutive(char[] array, char symbol) {
+    int[] counts = new int[StreakList.getCountsLength()];
+    this.countConsecutive(array, symbol, counts);
+    return new StreakList(counts);
+  }
+
+  /**
+   * Count the streaks of a symbol in an array like countConsecutive(char[], char), adding them to
+   * caller-owned streak counts instead of allocating a StreakList.
+   *
+   * @param array  array to be searched
+   * @param symbol symbol to be searched
+   * @param counts streak counts laid out as in StreakList(int[]), added to
+   */
+  public void countConsecutive(char[] array, char symbol, int[] counts) {
     int arrayLength = array.length;
-    // initialize max streak size, and count of the number of streaks in array that is of that size
-    StreakList list = new StreakList();
 
     // initialize streak marker, block marker, and streak counter
     int blockMarker = 0, maxStreak = 0;
@@ -514,7 +1335,7 @@ public class GameBoard {
           if (array[i] != Game.EMPTY) {
             blockMarker++;
           }
-          list.addStreak(maxStreak, blockMarker); // update list
+          StreakList.addStreak(counts, maxStreak, blockMarker); // update counts
           blockMarker = 0;
           maxStreak = 0;
         }
@@ -523,50 +1344,117 @@ public class GameBoard {
     // Since there could be a streak at the end of array, run a check one last time
     if (inStreak) {
       blockMarker++;
-      list.addStreak(maxStreak, blockMarker);
+      StreakList.addStreak(counts, maxStreak, blockMarker);
+    }
+  }
+
+  /**
+   * Given an array and a symbol, count the streaks of the symbol like countConsecutive(), but also
+   * count streaks broken by a single empty position within WIN_CONDITION positions, such as X_XXX,
+   * by their number of symbols. A broken streak one symbol short of a win is counted as blocked on
+   * one side, since it can only be completed on its gap. Streaks are read from ShapeTable.
+   * e.g.: _X_XX_OXX_X_ -> streak of 3 unblocked, streak of 3 blocked on one side
+   *
+   * @param array  array to be searched
+   * @param symbol symbol to be searched
+   * @return StreakList object representing all streaks found in array
+   */
+  public StreakList countShapes(char[] array, char symbol) {
+    int[] counts = new int[StreakList.getCountsLength()];
+    this.countShapes(array, symbol, counts);
+    return new StreakList(counts);
+  }
+
+  /**
+   * Count the streaks of a symbol in an array like countShapes(char[], char), adding them to
+   * caller-owned streak counts instead of allocating a StreakList.
+   *
+   * @param array  array to be searched
+   * @param symbol symbol to be searched
+   * @param counts streak counts laid out as in StreakList(int[]), added to
+   */
+  public void countShapes(char[] array, char symbol, int[] counts) {
+    int words = (array.length >>> 6) + 1;
+    long[] own = new long[words];
+    long[] blocked = new long[words];
+    for (int i = 0; i < array.length; i++) {
+      if (array[i] == symbol) {
+        own[i >>> 6] |= 1L << i;
+      } else if (array[i] != Game.EMPTY) {
+        blocked[i >>> 6] |= 1L << i;
+      }
     }
-    return list;
+    addShapes(own, blocked, 0, array.length, counts);
   }
 
   /**
-   * Scan the board to check for streaks.
+   * Return the streaks of a player on the board. Streak counts are kept up to date as moves are
+   * made and taken back, so the board is not scanned.
    *
    * @return StreakList object representing all valid streaks found on the board
    */
   public StreakList checkBoardForStreaks(Player player) {
+    int[] counts = new int[StreakList.getCountsLength()];
+    this.checkBoardForStreaks(player, counts);
+    return new StreakList(counts);
+  }
+
+  /**
+   * Add the streaks of a player on the board to caller-owned streak counts. Nothing is allocated
+   * for a player with moves on the board, so this can be called for every evaluated position.
+   *
+   * @param player player whose streaks are counted
+   * @param counts streak counts laid out as in StreakList(int[]), added to
+   */
+  public void checkBoardForStreaks(Player player, int[] counts) {
     char symbol = player.getSymbol();
+    int slot = this.findSlot(symbol);
+    if (slot >= 0) {
+      for (int i = 0; i < this.streakTotals[slot].length; i++) {
+        counts[i] += this.streakTotals[slot][i];
+      }
+      return;
+    }
+    // a symbol with no slot has no moves on an initialized board
+    int cells = this.boardDimension * this.boardDimension;
+    if ((symbol == Game.EMPTY) || ((this.emptyCount + this.moveCount) != cells)) {
+      this.scanBoardForStreaks(symbol, counts);
+    }
+  }
+
+  /**
+   * Scan the board line by line to check for streaks of a symbol.
+   *
+   * @param symbol symbol to be searched
+   * @param counts streak counts laid out as in StreakList(int[]), added to
+   */
+  private void scanBoardForStreaks(char symbol, int[] counts) {
     int dimension = this.getBoardDimension();
-    StreakList list = new StreakList();
 
     // check each row for streak
     for (int row = 0; row < dimension; row++) {
-      list.addStreakList(this.countConsecutive(this.getRow(row), symbol));
+      this.countShapes(this.getRow(row), symbol, counts);
     }
 
     // check each column for streak
     for (int col = 0; col < dimension; col++) {
-      list.addStreakList(this.countConsecutive(this.getColumn(col), symbol));
+      this.countShapes(this.getColumn(col), symbol, counts);
     }
 
-    // check diagonals for streaks
+    // check diagonals for streaks, reading every line in increasing column order like the bitboards
     for (int row = Game.WIN_CONDITION - 1, col = 0; row < dimension; row++) {
-      list.addStreakList(this.countConsecutive(
-              this.getDiagonal(row, col, col, row), symbol));
+      this.countShapes(this.getDiagonal(row, col, col, row), symbol, counts);
     }
     for (int col = 1, row = dimension - 1; col <= (dimension - Game.WIN_CONDITION); col++) {
-      list.addStreakList(this.countConsecutive(
-              this.getDiagonal(row, col, col, row), symbol));
+      this.countShapes(this.getDiagonal(row, col, col, row), symbol, counts);
     }
     for (int col = Game.WIN_CONDITION - 1, row = dimension - 1; col < dimension; col++) {
-      list.addStreakList(this.countConsecutive(
-              this.getDiagonal(row, col, row - col, 0), symbol));
+      this.countShapes(this.getDiagonal(row - col, 0, row, col), symbol, counts);
     }
     for (int row = dimension - 2, col = this.getBoardDimension() - 1;
          row >= (Game.WIN_CONDITION - 1); row--) {
-      list.addStreakList(this.countConsecutive(
-              this.getDiagonal(row, col, 0, col - row), symbol));
+      this.countShapes(this.getDiagonal(0, col - row, row, col), symbol, counts);
     }
-    return list;
   }
 
   /**
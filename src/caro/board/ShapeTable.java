@@ -0,0 +1,140 @@
+package caro.board;
+
+import caro.Game;
+
+/**
+ * Lookup table of the streak shapes a player can have on a line. A window of WIN_CONDITION + 2
+ * cells, starting with the cell before a streak, is encoded in base 3 (empty, own or blocked cell)
+ * and mapped to the shape starting at the window's second cell: its number of stones, the number of
+ * cells it spans and its number of blocked sides.
+ *
+ * <p>Besides contiguous streaks, the table recognizes streaks broken by a single empty cell within
+ * WIN_CONDITION cells, such as X_XXX or XX_X, and counts them by their number of stones. A broken
+ * streak one stone short of a win can only be completed on its gap, so it is always counted as
+ * blocked on one side.
+ */
+public final class ShapeTable {
+  /** number of cells in a window. */
+  public static final int CELLS = Game.WIN_CONDITION + 2;
+  /** shape of a streak too long to fit in a window, whose end has to be found by the caller. */
+  public static final int LONG_RUN = -1;
+  /** shape of a window that does not start a streak. */
+  public static final int NO_SHAPE = 0;
+  private static final int EMPTY = 0, OWN = 1, BLOCKED = 2;
+  // base 3 value of every CELLS-bit binary number, so that windows can be encoded from bitboards
+  private static final int[] TERNARY = new int[1 << CELLS];
+  private static final int[] SHAPES;
+
+  static {
+    for (int bits = 1; bits < TERNARY.length; bits++) {
+      TERNARY[bits] = 3 * TERNARY[bits >>> 1] + (bits & 1);
+    }
+    int size = 1;
+    for (int i = 0; i < CELLS; i++) {
+      size *= 3;
+    }
+    SHAPES = new int[size];
+    int[] cells = new int[CELLS];
+    for (int index = 0; index < size; index++) {
+      for (int i = 0, value = index; i < CELLS; i++, value /= 3) {
+        cells[i] = value % 3;
+      }
+      SHAPES[index] = shapeOf(cells);
+    }
+  }
+
+  /**
+   * Private constructor, class only holds static lookups.
+   */
+  private ShapeTable() {
+  }
+
+  /**
+   * Find the shape starting at the second cell of a window.
+   *
+   * @param own     bits of the window's cells holding the player's stones, lowest bit first
+   * @param blocked bits of the window's cells that are blocked (opponent stones or off the line)
+   * @return packed shape, LONG_RUN or NO_SHAPE
+   */
+  public static int lookup(long own, long blocked) {
+    int mask = (1 << CELLS) - 1;
+    int ownBits = (int) own & mask;
+    return SHAPES[TERNARY[ownBits] + 2 * TERNARY[(int) blocked & mask & ~ownBits]];
+  }
+
+  /**
+   * Number of stones in a shape.
+   *
+   * @param shape packed shape
+   * @return number of stones
+   */
+  public static int getStones(int shape) {
+    return shape & 0xFF;
+  }
+
+  /**
+   * Number of cells a shape spans, including its gap.
+   *
+   * @param shape packed shape
+   * @return span of shape
+   */
+  public static int getSpan(int shape) {
+    return (shape >>> 8) & 0xFF;
+  }
+
+  /**
+   * Number of blocked sides of a shape, as used by StreakList.addStreak().
+   *
+   * @param shape packed shape
+   * @return block marker
+   */
+  public static int getBlockMarker(int shape) {
+    return shape >>> 16;
+  }
+
+  /**
+   * Work out the shape starting at the second cell of a decoded window.
+   *
+   * @param cells window, one EMPTY, OWN or BLOCKED entry per cell
+   * @return packed shape, LONG_RUN or NO_SHAPE
+   */
+  private static int shapeOf(int[] cells) {
+    if ((cells[0] == OWN) || (cells[1] != OWN)) {
+      return NO_SHAPE;
+    }
+    int run = runLength(cells, 1);
+    if (run >= Game.WIN_CONDITION) {
+      return LONG_RUN;
+    }
+    int stones = run, span = run;
+    if (cells[1 + run] == EMPTY) {
+      // a second run after a single gap joins the first if the whole shape fits in a winning line
+      int second = runLength(cells, 2 + run);
+      if ((second > 0) && (run + 1 + second <= Game.WIN_CONDITION)
+              && (cells[2 + run + second] != OWN)) {
+        stones += second;
+        span += 1 + second;
+      }
+    }
+    int blockMarker = ((cells[0] == BLOCKED) ? 1 : 0) + ((cells[1 + span] == BLOCKED) ? 1 : 0);
+    if ((span > stones) && (stones == Game.WIN_CONDITION - 1)) {
+      blockMarker = 1;
+    }
+    return (blockMarker << 16) | (span << 8) | stones;
+  }
+
+  /**
+   * Count consecutive OWN cells of a window from a start cell.
+   *
+   * @param cells window
+   * @param start first cell
+   * @return length of run
+   */
+  private static int runLength(int[] cells, int start) {
+    int run = 0;
+    while ((start + run < cells.length) && (cells[start + run] == OWN)) {
+      run++;
+    }
+    return run;
+  }
+}
@@ -0,0 +1,59 @@
+package caro.board;
+
+/**
+ * The 8 rotations and reflections of a square board. A position and its transforms are
+ * strategically identical, so a value learned for one holds for all of them.
+ * Symmetries are numbered 0 to NUM_SYMMETRIES - 1, and symmetry 0 leaves the board unchanged.
+ */
+public class Symmetry {
+  public static final int NUM_SYMMETRIES = 8;
+  public static final int IDENTITY = 0;
+
+  /**
+   * Constructor, not used: Symmetry only has static methods.
+   */
+  private Symmetry() {
+  }
+
+  /**
+   * Map a position to the position it is moved to by a symmetry.
+   *
+   * @param symmetry  symmetry, 0 to NUM_SYMMETRIES - 1
+   * @param row       row of position
+   * @param col       col of position
+   * @param dimension board dimension
+   * @return cell of transformed position (row * dimension + col)
+   * @throws IllegalArgumentException if symmetry is out of range
+   */
+  public static int transform(int symmetry, int row, int col, int dimension)
+          throws IllegalArgumentException {
+    int last = dimension - 1;
+    switch (symmetry) {
+      case 0:
+        return row * dimension + col;
+      case 1:
+        // rotation by 90 degrees
+        return col * dimension + (last - row);
+      case 2:
+        // rotation by 180 degrees
+        return (last - row) * dimension + (last - col);
+      case 3:
+        // rotation by 270 degrees
+        return (last - col) * dimension + row;
+      case 4:
+        // reflection in the vertical axis
+        return row * dimension + (last - col);
+      case 5:
+        // reflection in the horizontal axis
+        return (last - row) * dimension + col;
+      case 6:
+        // reflection in the main diagonal
+        return col * dimension + row;
+      case 7:
+        // reflection in the anti-diagonal
+        return (last - col) * dimension + (last - row);
+      default:
+        throw new IllegalArgumentException("Symmetry is out of range.");
+    }
+  }
+}
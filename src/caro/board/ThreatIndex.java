@@ -0,0 +1,508 @@
+package caro.board;
+
+import caro.Game;
+import java.util.Arrays;
+
+/**
+ * Index of the threats each player has on a GameBoard, kept up to date one line at a time. Moves
+ * only mark the lines through them as changed, and changed lines are recomputed when the index is
+ * next read, so positions that are never asked about (such as most leaves of a search) cost
+ * nothing. For every player it counts fives, open fours, fours and open threes, and keeps the cells
+ * that matter for them:
+ * <ul>
+ *   <li>FIVE_GAIN cells complete a five. Every four has one, an open four has two, and the
+ *   opponent must play on one of them.</li>
+ *   <li>FOUR_GAIN cells turn an open three into an open four.</li>
+ *   <li>THREE_COST cells are the replies that stop an open three from becoming an open four.</li>
+ *   <li>FOUR_MOVE cells make a four, and THREE_MOVE cells make an open three. These are the moves
+ *   a threat-space search tries.</li>
+ * </ul>
+ * A four is WIN_CONDITION - 1 stones with one cell left to complete a win, such as OXXXX_ or
+ * X_XXX. An open four is WIN_CONDITION - 1 consecutive stones with both ends empty. An open three
+ * is WIN_CONDITION - 2 stones that can become an open four with one more stone, such as _XXX_ or
+ * _X_XX_.
+ */
+public class ThreatIndex {
+  /** threat types counted by getThreatCount(). */
+  public static final int FIVE = 0, OPEN_FOUR = 1, FOUR = 2, OPEN_THREE = 3;
+  /** kinds of threat cells returned by getThreatCells(). */
+  public static final int FIVE_GAIN = 0, FOUR_GAIN = 1, THREE_COST = 2, FOUR_MOVE = 3,
+          THREE_MOVE = 4;
+  private static final int NUM_THREATS = 4, NUM_CELL_KINDS = 5;
+  private static final int NUM_PLAYERS = 2, NUM_DIRECTIONS = 4;
+  private final int dimension;
+  // threat counts and threat cells of each line, indexed [slot][dir][line] and
+  // [slot][kind][dir][line]
+  private final int[][][][] lineThreats;
+  private final long[][][][][] lineCells;
+  // totals over all lines, and number of lines each cell is a threat cell on
+  private final int[][] threatTotals;
+  private final int[][][] cellCounts;
+  // one bit per row word for every cell with a non-zero cell count, and number of such cells
+  private final long[][][][] cellBits;
+  private final int[][] cellTotals;
+  /* lines changed since the index was last read, as dir * lineStride + line, and the line hash
+  each line's threats were last computed for; a line that a move was made and taken back on since
+  then has its old hash again and is not recomputed */
+  private final boolean[][] dirty;
+  private final long[][] lineKeys;
+  private final int[] dirtyLines;
+  private int dirtyCount;
+  private final int lineStride;
+
+  /**
+   * Constructor for an empty index.
+   *
+   * @param dimension board dimension
+   */
+  ThreatIndex(int dimension) {
+    this.dimension = dimension;
+    int words = ((dimension - 1) >>> 6) + 1;
+    int diagonals = 2 * dimension - 1;
+    int[] lines = new int[]{dimension, dimension, diagonals, diagonals};
+    this.lineThreats = new int[NUM_PLAYERS][NUM_DIRECTIONS][][];
+    this.lineCells = new long[NUM_PLAYERS][NUM_CELL_KINDS][NUM_DIRECTIONS][][];
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+        this.lineThreats[slot][dir] = new int[lines[dir]][NUM_THREATS];
+        for (int kind = 0; kind < NUM_CELL_KINDS; kind++) {
+          this.lineCells[slot][kind][dir] = new long[lines[dir]][words];
+        }
+      }
+    }
+    this.threatTotals = new int[NUM_PLAYERS][NUM_THREATS];
+    this.cellCounts = new int[NUM_PLAYERS][NUM_CELL_KINDS][dimension * dimension];
+    this.cellBits = new long[NUM_PLAYERS][NUM_CELL_KINDS][dimension][words];
+    this.cellTotals = new int[NUM_PLAYERS][NUM_CELL_KINDS];
+    this.dirty = new boolean[NUM_DIRECTIONS][];
+    this.lineKeys = new long[NUM_DIRECTIONS][];
+    for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+      this.dirty[dir] = new boolean[lines[dir]];
+      this.lineKeys[dir] = new long[lines[dir]];
+    }
+    this.lineStride = diagonals;
+    this.dirtyLines = new int[NUM_DIRECTIONS * diagonals];
+  }
+
+  /**
+   * Copy the threats of another index of the same dimension into this index.
+   *
+   * @param other index to be copied
+   */
+  void copyFrom(ThreatIndex other) {
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+        for (int line = 0; line < other.lineThreats[slot][dir].length; line++) {
+          this.lineThreats[slot][dir][line] = other.lineThreats[slot][dir][line].clone();
+          for (int kind = 0; kind < NUM_CELL_KINDS; kind++) {
+            this.lineCells[slot][kind][dir][line] = other.lineCells[slot][kind][dir][line].clone();
+          }
+        }
+      }
+      this.threatTotals[slot] = other.threatTotals[slot].clone();
+      this.cellTotals[slot] = other.cellTotals[slot].clone();
+      for (int kind = 0; kind < NUM_CELL_KINDS; kind++) {
+        this.cellCounts[slot][kind] = other.cellCounts[slot][kind].clone();
+        for (int row = 0; row < this.dimension; row++) {
+          this.cellBits[slot][kind][row] = other.cellBits[slot][kind][row].clone();
+        }
+      }
+    }
+    for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+      this.dirty[dir] = other.dirty[dir].clone();
+      this.lineKeys[dir] = other.lineKeys[dir].clone();
+    }
+    System.arraycopy(other.dirtyLines, 0, this.dirtyLines, 0, other.dirtyCount);
+    this.dirtyCount = other.dirtyCount;
+  }
+
+  /**
+   * Remove all threats.
+   */
+  void clear() {
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+        for (int[] threats : this.lineThreats[slot][dir]) {
+          Arrays.fill(threats, 0);
+        }
+      }
+      for (int kind = 0; kind < NUM_CELL_KINDS; kind++) {
+        for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+          for (long[] cells : this.lineCells[slot][kind][dir]) {
+            Arrays.fill(cells, 0L);
+          }
+        }
+        Arrays.fill(this.cellCounts[slot][kind], 0);
+        for (long[] bits : this.cellBits[slot][kind]) {
+          Arrays.fill(bits, 0L);
+        }
+      }
+      Arrays.fill(this.threatTotals[slot], 0);
+      Arrays.fill(this.cellTotals[slot], 0);
+    }
+    for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+      Arrays.fill(this.dirty[dir], false);
+      Arrays.fill(this.lineKeys[dir], 0L);
+    }
+    this.dirtyCount = 0;
+  }
+
+  /**
+   * Mark a line as changed, so that its threats are recomputed when the index is next read.
+   *
+   * @param dir  direction of line
+   * @param line line index
+   */
+  void markChanged(int dir, int line) {
+    if (!this.dirty[dir][line]) {
+      this.dirty[dir][line] = true;
+      this.dirtyLines[this.dirtyCount++] = dir * this.lineStride + line;
+    }
+  }
+
+  /**
+   * Recompute the threats of every line changed since the index was last read.
+   *
+   * @param board board the index belongs to
+   */
+  void refresh(GameBoard board) {
+    for (int i = 0; i < this.dirtyCount; i++) {
+      int dir = this.dirtyLines[i] / this.lineStride;
+      int line = this.dirtyLines[i] % this.lineStride;
+      this.dirty[dir][line] = false;
+      long key = board.getLineHash(dir, line);
+      if (key == this.lineKeys[dir][line]) {
+        continue;
+      }
+      this.lineKeys[dir][line] = key;
+      int from = board.lineStart(dir, line);
+      this.updateLine(dir, line, board.getLineBits(0, dir, line), board.getLineBits(1, dir, line),
+              from, from + board.lineLength(dir, line));
+    }
+    this.dirtyCount = 0;
+  }
+
+  /**
+   * Getter for number of threats of a type.
+   *
+   * @param slot   player slot
+   * @param threat FIVE, OPEN_FOUR, FOUR or OPEN_THREE
+   * @return number of threats
+   */
+  int getThreatCount(int slot, int threat) {
+    return this.threatTotals[slot][threat];
+  }
+
+  /**
+   * Getter for number of threat cells of a kind.
+   *
+   * @param slot player slot
+   * @param kind FIVE_GAIN, FOUR_GAIN or THREE_COST
+   * @return number of cells
+   */
+  int getThreatCellCount(int slot, int kind) {
+    return this.cellTotals[slot][kind];
+  }
+
+  /**
+   * Check whether a cell is a threat cell of a kind.
+   *
+   * @param slot player slot
+   * @param kind FIVE_GAIN, FOUR_GAIN, THREE_COST, FOUR_MOVE or THREE_MOVE
+   * @param cell cell (row * dimension + col)
+   * @return true if cell is a threat cell of kind, false if not
+   */
+  boolean isThreatCell(int slot, int kind, int cell) {
+    return this.cellCounts[slot][kind][cell] > 0;
+  }
+
+  /**
+   * Collect the threat cells of a kind in row-major order.
+   *
+   * @param slot  player slot
+   * @param kind  FIVE_GAIN, FOUR_GAIN or THREE_COST
+   * @param cells filled with cells (row * dimension + col), must hold at least
+   *              getThreatCellCount() cells
+   * @return number of cells
+   */
+  int getThreatCells(int slot, int kind, int[] cells) {
+    int count = 0;
+    for (int row = 0; (row < this.dimension) && (count < this.cellTotals[slot][kind]); row++) {
+      long[] bits = this.cellBits[slot][kind][row];
+      for (int word = 0; word < bits.length; word++) {
+        for (long b = bits[word]; b != 0; b &= b - 1) {
+          cells[count++] = row * this.dimension + (word << 6) + Long.numberOfTrailingZeros(b);
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Recompute the threats of both players on a line.
+   *
+   * @param dir   direction of line
+   * @param line  line index
+   * @param bits0 packed line of player slot 0
+   * @param bits1 packed line of player slot 1
+   * @param from  bit position of first cell of line
+   * @param to    bit position after last cell of line
+   */
+  private void updateLine(int dir, int line, long[] bits0, long[] bits1, int from, int to) {
+    for (int slot = 0; slot < NUM_PLAYERS; slot++) {
+      int[] threats = this.lineThreats[slot][dir][line];
+      // a line without threats that still has too few stones for one needs no update
+      if ((countStones((slot == 0) ? bits0 : bits1) < Math.max(1, Game.WIN_CONDITION - 3))
+              && this.isQuiet(slot, dir, line)) {
+        continue;
+      }
+      for (int threat = 0; threat < NUM_THREATS; threat++) {
+        this.threatTotals[slot][threat] -= threats[threat];
+      }
+      for (int kind = 0; kind < NUM_CELL_KINDS; kind++) {
+        this.applyCells(slot, kind, dir, line, -1);
+      }
+      this.findThreats((slot == 0) ? bits0 : bits1, (slot == 0) ? bits1 : bits0, from, to, threats,
+              this.lineCells[slot], dir, line);
+      for (int threat = 0; threat < NUM_THREATS; threat++) {
+        this.threatTotals[slot][threat] += threats[threat];
+      }
+      for (int kind = 0; kind < NUM_CELL_KINDS; kind++) {
+        this.applyCells(slot, kind, dir, line, 1);
+      }
+    }
+  }
+
+  /**
+   * Check if a line holds no threats and no threat cells of a player.
+   *
+   * @param slot player slot
+   * @param dir  direction of line
+   * @param line line index
+   * @return true if line holds nothing, false if not
+   */
+  private boolean isQuiet(int slot, int dir, int line) {
+    for (int count : this.lineThreats[slot][dir][line]) {
+      if (count != 0) {
+        return false;
+      }
+    }
+    for (int kind = 0; kind < NUM_CELL_KINDS; kind++) {
+      for (long word : this.lineCells[slot][kind][dir][line]) {
+        if (word != 0) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Count the stones on a packed line.
+   *
+   * @param line packed line
+   * @return number of stones
+   */
+  private static int countStones(long[] line) {
+    int stones = 0;
+    for (long word : line) {
+      stones += Long.bitCount(word);
+    }
+    return stones;
+  }
+
+  /**
+   * Add or remove the threat cells of a kind stored for a line to the cell counts.
+   *
+   * @param slot  player slot
+   * @param kind  kind of threat cell
+   * @param dir   direction of line
+   * @param line  line index
+   * @param delta 1 to add, -1 to remove
+   */
+  private void applyCells(int slot, int kind, int dir, int line, int delta) {
+    long[] positions = this.lineCells[slot][kind][dir][line];
+    for (int word = 0; word < positions.length; word++) {
+      for (long b = positions[word]; b != 0; b &= b - 1) {
+        int pos = (word << 6) + Long.numberOfTrailingZeros(b);
+        int row, col;
+        switch (dir) {
+          case GameBoard.HORIZONTAL:
+            row = line;
+            col = pos;
+            break;
+          case GameBoard.VERTICAL:
+            row = pos;
+            col = line;
+            break;
+          case GameBoard.DIAGONAL:
+            row = line - (this.dimension - 1) + pos;
+            col = pos;
+            break;
+          default:
+            row = line - pos;
+            col = pos;
+            break;
+        }
+        int cell = row * this.dimension + col;
+        int count = (this.cellCounts[slot][kind][cell] += delta);
+        if ((delta > 0) && (count == 1)) {
+          this.cellBits[slot][kind][row][col >>> 6] |= 1L << col;
+          this.cellTotals[slot][kind]++;
+        } else if ((delta < 0) && (count == 0)) {
+          this.cellBits[slot][kind][row][col >>> 6] &= ~(1L << col);
+          this.cellTotals[slot][kind]--;
+        }
+      }
+    }
+  }
+
+  /**
+   * Find the threats of a player on a line.
+   *
+   * @param own     packed line with the player's stones
+   * @param blocked packed line with the opponent's stones
+   * @param from    bit position of first cell of line
+   * @param to      bit position after last cell of line
+   * @param threats filled with the number of threats of each type
+   * @param cells   threat cells of the player, indexed [kind][dir][line], overwritten for line
+   * @param dir     direction of line
+   * @param line    line index
+   */
+  private void findThreats(long[] own, long[] blocked, int from, int to, int[] threats,
+                           long[][][][] cells, int dir, int line) {
+    Arrays.fill(threats, 0);
+    long[] fiveGain = cells[FIVE_GAIN][dir][line];
+    long[] fourGain = cells[FOUR_GAIN][dir][line];
+    long[] threeCost = cells[THREE_COST][dir][line];
+    long[] fourMove = cells[FOUR_MOVE][dir][line];
+    long[] threeMove = cells[THREE_MOVE][dir][line];
+    Arrays.fill(fiveGain, 0L);
+    Arrays.fill(fourGain, 0L);
+    Arrays.fill(threeCost, 0L);
+    Arrays.fill(fourMove, 0L);
+    Arrays.fill(threeMove, 0L);
+    int win = Game.WIN_CONDITION;
+    // a line needs at least one stone short of an open three to hold any threat or threat move
+    if (countStones(own) < Math.max(1, win - 3)) {
+      return;
+    }
+    // windows holding a threat overlap the stones, so windows far from them are not read
+    int firstStone = GameBoard.nextSetBit(own, from, to);
+    int lastStone = lastSetBit(own);
+
+    // fives and open fours are runs of consecutive stones
+    for (int pos = GameBoard.nextSetBit(own, from, to), end; pos >= 0;
+         pos = GameBoard.nextSetBit(own, end, to)) {
+      end = GameBoard.nextClearBit(own, pos, to);
+      if (end - pos >= win) {
+        threats[FIVE]++;
+      } else if ((end - pos == win - 1) && (pos > from) && (end < to)
+              && isEmpty(own, blocked, pos - 1) && isEmpty(own, blocked, end)) {
+        threats[OPEN_FOUR]++;
+      }
+    }
+
+    /* every window of WIN_CONDITION cells free of the opponent with one empty cell is a four,
+    and one with two empty cells becomes a four when either is played */
+    long winMask = (1L << win) - 1;
+    int winCells = 0;
+    for (int start = Math.max(from, firstStone - win + 1);
+         (start <= lastStone) && (start + win <= to); start++) {
+      if ((GameBoard.window(blocked, start) & winMask) != 0) {
+        continue;
+      }
+      long window = GameBoard.window(own, start) & winMask;
+      int stones = Long.bitCount(window);
+      if (stones == win - 1) {
+        int pos = start + Long.numberOfTrailingZeros(~window);
+        if ((fiveGain[pos >>> 6] & (1L << pos)) == 0) {
+          fiveGain[pos >>> 6] |= 1L << pos;
+          winCells++;
+        }
+      } else if (stones == win - 2) {
+        addCells(fourMove, start, ~window & winMask);
+      }
+    }
+    // an open four accounts for two cells that complete a five
+    threats[FOUR] = Math.max(0, winCells - 2 * threats[OPEN_FOUR]);
+
+    /* a window of WIN_CONDITION + 1 cells with empty ends and one empty cell between
+    WIN_CONDITION - 2 stones is an open three, whose empty inner cell makes an open four. Windows
+    sharing their first stone belong to the same three, which is only stopped by a cell that
+    spoils all of them. A window with one stone fewer becomes an open three when either of its
+    empty inner cells is played. */
+    long threeMask = (1L << (win + 1)) - 1;
+    long innerMask = threeMask & ~1L & ~(1L << win);
+    int group = -1, groupStart = 0;
+    long groupCost = 0L;
+    for (int start = Math.max(from, firstStone - win);
+         (start < lastStone) && (start + win < to); start++) {
+      long window = GameBoard.window(own, start) & threeMask;
+      if (((GameBoard.window(blocked, start) & threeMask) != 0) || ((window & ~innerMask) != 0)) {
+        continue;
+      }
+      int stones = Long.bitCount(window);
+      if ((stones == win - 3) && (stones > 0)) {
+        addCells(threeMove, start, ~window & innerMask);
+      }
+      if (stones != win - 2) {
+        continue;
+      }
+      int gain = start + Long.numberOfTrailingZeros(~window & innerMask);
+      fourGain[gain >>> 6] |= 1L << gain;
+      int first = start + Long.numberOfTrailingZeros(window);
+      if (first != group) {
+        addCells(threeCost, groupStart, groupCost);
+        threats[OPEN_THREE]++;
+        group = first;
+        groupStart = start;
+        groupCost = -1L;
+      }
+      groupCost &= (1L << (start - groupStart)) | (1L << (gain - groupStart))
+              | (1L << (start + win - groupStart));
+    }
+    addCells(threeCost, groupStart, groupCost);
+  }
+
+  /**
+   * Find the last set bit of a packed line.
+   *
+   * @param line packed line
+   * @return position of bit, -1 if there is none
+   */
+  private static int lastSetBit(long[] line) {
+    for (int word = line.length - 1; word >= 0; word--) {
+      if (line[word] != 0) {
+        return (word << 6) + 63 - Long.numberOfLeadingZeros(line[word]);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Check if a position on a line holds no stone.
+   *
+   * @param own     packed line with the player's stones
+   * @param blocked packed line with the opponent's stones
+   * @param pos     bit position
+   * @return true if empty, false if not
+   */
+  private static boolean isEmpty(long[] own, long[] blocked, int pos) {
+    return ((GameBoard.window(own, pos) | GameBoard.window(blocked, pos)) & 1L) == 0;
+  }
+
+  /**
+   * Set the positions of a mask in a packed line.
+   *
+   * @param line  packed line
+   * @param start position of the mask's lowest bit
+   * @param mask  positions relative to start
+   */
+  private static void addCells(long[] line, int start, long mask) {
+    for (long b = mask; b != 0; b &= b - 1) {
+      int pos = start + Long.numberOfTrailingZeros(b);
+      line[pos >>> 6] |= 1L << pos;
+    }
+  }
+}
@@ -1,20 +1,22 @@
 package caro.streak;
 
 /**
- * Class to store counts of streak of specific length.
+ * Class to store counts of streak of specific length. The count and unblocked count are kept in
+ * two consecutive elements of an int array, which a Streak either owns or shares with the
+ * StreakList it belongs to.
  */
 public class Streak {
   private final int length;
-  private int count;
-  private int unblockedCount;
+  private final int[] counts;
+  private final int offset;
 
   /**
    * Constructor to initialize object.
    */
   public Streak() {
     this.length = 0;
-    this.count = 0;
-    this.unblockedCount = 0;
+    this.counts = new int[2];
+    this.offset = 0;
   }
 
   /**
@@ -30,8 +32,21 @@ public class Streak {
     }
 
     this.length = length;
-    this.count = count;
-    this.unblockedCount = countUnblocked;
+    this.counts = new int[]{count, countUnblocked};
+    this.offset = 0;
+  }
+
+  /**
+   * Constructor for a Streak viewing counts held in another array.
+   *
+   * @param length maximum streak length
+   * @param counts array holding count at offset and unblocked count at offset + 1
+   * @param offset index of count in counts
+   */
+  Streak(int length, int[] counts, int offset) {
+    this.length = length;
+    this.counts = counts;
+    this.offset = offset;
   }
 
   /**
@@ -50,7 +65,7 @@ public class Streak {
    * @return count
    */
   public int getCount() {
-    return this.count;
+    return this.counts[this.offset];
   }
 
   /**
@@ -59,7 +74,7 @@ public class Streak {
    * @return unblockedCount
    */
   public int getUnblockedCount() {
-    return this.unblockedCount;
+    return this.counts[this.offset + 1];
   }
 
 
@@ -81,17 +96,30 @@ public class Streak {
    * @param blockMarker block marker of streak to be added
    */
   public void updateStreak(int blockMarker) throws IllegalArgumentException {
+    updateStreak(this.counts, this.offset, this.length, blockMarker);
+  }
+
+  /**
+   * Update the counts of a streak length held in an array with a new streak of that length.
+   *
+   * @param counts      array holding count at offset and unblocked count at offset + 1
+   * @param offset      index of count in counts
+   * @param length      streak length
+   * @param blockMarker block marker of streak to be added
+   */
+  static void updateStreak(int[] counts, int offset, int length, int blockMarker)
+          throws IllegalArgumentException {
     if (blockMarker < 0) {
       throw new IllegalArgumentException("Block Marker cannot be negative.");
     }
 
     // only update Streak counts if other streak is not blocked on both sides, with the exception
     // of streak with length 5
-    if ((blockMarker < 2) || (this.getStreakLength() == 5)) {
-      this.count++;
+    if ((blockMarker < 2) || (length == 5)) {
+      counts[offset]++;
       // increase unblocked count if current streak is not blocked
       if (blockMarker == 0) {
-        this.unblockedCount++;
+        counts[offset + 1]++;
       }
     }
   }
@@ -110,9 +138,8 @@ public class Streak {
     if (other.getCount() == 0) {
       return;
     }
-    this.count += other.getCount();
-    this.unblockedCount += other.getUnblockedCount();
-
+    this.counts[this.offset] += other.getCount();
+    this.counts[this.offset + 1] += other.getUnblockedCount();
   }
 }
 
@@ -5,19 +5,45 @@ import caro.Game;
 /**
  * StreakList class represents an object that stores multiple Streak objects,
  * each representing streaks of a certain length.
+ *
+ * <p>Counts are kept in an int array laid out as {count2, unblocked2, count3, unblocked3, ...} for
+ * streak lengths 2 to WIN_CONDITION. Code on the search's hot path accumulates streaks straight
+ * into such an array with the static addStreak(), and a StreakList can be created as a view over it
+ * without copying.
  */
 public class StreakList {
   private int length = Game.WIN_CONDITION - 1;
-  private final Streak[] list;
+  private final int[] counts;
 
   /**
    * Constructor.
    */
   public StreakList() {
-    this.list = new Streak[length];
-    for (int i = 2; i <= (length + 1); i++) {
-      this.list[i - 2] = new Streak(i, 0, 0);
+    this.counts = new int[getCountsLength()];
+  }
+
+  /**
+   * Constructor for a StreakList viewing streak counts. Later changes to counts are seen by the
+   * StreakList, and changes made through the StreakList are written to counts.
+   *
+   * @param counts count and unblocked count of each streak length from 2 to WIN_CONDITION, as
+   *               {count2, unblocked2, count3, unblocked3, ...}
+   * @throws IllegalArgumentException if counts is too short
+   */
+  public StreakList(int[] counts) throws IllegalArgumentException {
+    if (counts.length < getCountsLength()) {
+      throw new IllegalArgumentException("Counts do not cover every streak length.");
     }
+    this.counts = counts;
+  }
+
+  /**
+   * Number of ints needed to hold the counts of a StreakList.
+   *
+   * @return length of counts array
+   */
+  public static int getCountsLength() {
+    return 2 * (Game.WIN_CONDITION - 1);
   }
 
   /**
@@ -36,15 +62,15 @@ public class StreakList {
    */
   public int getMaxStreakLength() {
     for (int i = this.length - 1; i >= 0; i--) {
-      if (this.list[i].getCount() > 0) {
-        return this.list[i].getStreakLength();
+      if (this.counts[2 * i] > 0) {
+        return i + 2;
       }
     }
     return 0;
   }
 
   /**
-   * Return Streak at index of StreakList.
+   * Return Streak at index of StreakList. The Streak is a view over this list's counts.
    *
    * @param index index of StreakList
    * @return Streak at index
@@ -53,7 +79,27 @@ public class StreakList {
     if ((index < 0) || (index >= this.length)) {
       throw new IllegalArgumentException("Index out of range.");
     }
-    return this.list[index];
+    return new Streak(index + 2, this.counts, 2 * index);
+  }
+
+  /**
+   * Return count of streaks at index of StreakList, without creating a Streak.
+   *
+   * @param index index of StreakList
+   * @return count of streaks of length index + 2
+   */
+  public int getCount(int index) {
+    return this.counts[2 * index];
+  }
+
+  /**
+   * Return count of unblocked streaks at index of StreakList, without creating a Streak.
+   *
+   * @param index index of StreakList
+   * @return count of unblocked streaks of length index + 2
+   */
+  public int getUnblockedCount(int index) {
+    return this.counts[2 * index + 1];
   }
 
   /**
@@ -63,17 +109,26 @@ public class StreakList {
    * @param blockMarker   block marker of streak being added
    */
   public void addStreak(int currentStreak, int blockMarker) throws IllegalArgumentException {
+    addStreak(this.counts, currentStreak, blockMarker);
+  }
+
+  /**
+   * Add a streak to streak counts laid out as in StreakList(int[]).
+   *
+   * @param counts        streak counts
+   * @param currentStreak length of streak being added
+   * @param blockMarker   block marker of streak being added
+   */
+  public static void addStreak(int[] counts, int currentStreak, int blockMarker)
+          throws IllegalArgumentException {
     if (currentStreak < 0) {
       throw new IllegalArgumentException("Streak Length cannot be negative.");
     }
     if ((currentStreak == 0) || (currentStreak == 1)) {
       return;
     }
-    if (currentStreak >= Game.WIN_CONDITION) {
-      this.list[this.length - 1].updateStreak(blockMarker);
-    } else {
-      this.list[currentStreak - 2].updateStreak(blockMarker);
-    }
+    int length = Math.min(currentStreak, Game.WIN_CONDITION);
+    Streak.updateStreak(counts, 2 * (length - 2), length, blockMarker);
   }
 
   /**
@@ -86,8 +141,8 @@ public class StreakList {
       return;
     }
 
-    for (int i = 0; i < this.getLength(); i++) {
-      this.list[i].updateStreak(other.list[i]);
+    for (int i = 0; i < getCountsLength(); i++) {
+      this.counts[i] += other.counts[i];
     }
   }
 
@@ -100,9 +155,9 @@ public class StreakList {
   @Override
   public String toString() {
     String s = "";
-    for (Streak streak : this.list) {
-      if (streak.getCount() > 0) {
-        s += streak.toString();
+    for (int i = 0; i < this.length; i++) {
+      if (this.getCount(i) > 0) {
+        s += this.getStreak(i).toString();
       }
     }
 
@@ -0,0 +1,136 @@
+package caro;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import caro.AI.ConcurrentQTable;
+import caro.AI.QTable;
+import caro.AI.TranspositionTable;
+
+/**
+ * JUnit test class for ConcurrentQTable.
+ */
+public class ConcurrentQTableTest {
+  private ConcurrentQTable table;
+  private double delta = 0.0001;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Set up test case.
+   */
+  @Before
+  public void setUp() {
+    table = new ConcurrentQTable(64, 4);
+  }
+
+  /**
+   * Test for bad construction of ConcurrentQTable object.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadStripes() {
+    new ConcurrentQTable(64, 3);
+  }
+
+  /**
+   * Test for bad construction of ConcurrentQTable object.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testMoreStripesThanCapacity() {
+    new ConcurrentQTable(4, 8);
+  }
+
+  /**
+   * Test put(), get(), getMax() and contains().
+   */
+  @Test
+  public void testPutAndGet() {
+    int[] moves = {TranspositionTable.packMove(1, 2), TranspositionTable.packMove(2, 1)};
+    assertEquals(64, table.getCapacity());
+    assertFalse(table.contains(5L, moves[0]));
+    assertEquals(0, table.getMax(5L, moves, 2), delta);
+
+    table.put(5L, moves[0], -0.25f);
+    table.put(5L, moves[1], -0.5f);
+    assertTrue(table.contains(5L, moves[0]));
+    assertEquals(-0.25, table.get(5L, moves[0]), delta);
+    assertEquals(-0.25, table.getMax(5L, moves, 2), delta);
+    assertEquals(-0.5, table.getMax(5L, new int[]{moves[1]}, 1), delta);
+    assertFalse(table.contains(5L << 32, moves[0]));
+    assertEquals(2, table.getSize());
+
+    table.clear();
+    assertEquals(0, table.getSize());
+    assertFalse(table.contains(5L, moves[0]));
+  }
+
+  /**
+   * Test that pairs stored by several threads at once are all kept, while stripes grow.
+   */
+  @Test
+  public void testConcurrentPuts() throws InterruptedException {
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      int thread = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 2000; i++) {
+          table.put(hash(thread, i), TranspositionTable.packMove(thread, i % 15), i);
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(8000, table.getSize());
+    for (int t = 0; t < 4; t++) {
+      for (int i = 0; i < 2000; i++) {
+        assertEquals(i, table.get(hash(t, i), TranspositionTable.packMove(t, i % 15)), delta);
+      }
+    }
+  }
+
+  /**
+   * Test that toQTable() and save() give a single table holding every pair.
+   */
+  @Test
+  public void testToQTableAndSave() throws IOException {
+    for (int i = 0; i < 100; i++) {
+      table.put(hash(0, i), TranspositionTable.packMove(i % 15, i / 15), i);
+    }
+    QTable copy = table.toQTable();
+    assertEquals(100, copy.getSize());
+
+    Path file = folder.newFile("table.qtable").toPath();
+    table.save(file);
+    QTable loaded = QTable.load(file);
+    assertEquals(100, loaded.getSize());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, copy.get(hash(0, i), TranspositionTable.packMove(i % 15, i / 15)), delta);
+      assertEquals(i, loaded.get(hash(0, i), TranspositionTable.packMove(i % 15, i / 15)), delta);
+    }
+  }
+
+  /**
+   * Well-spread hash for test pairs.
+   *
+   * @param thread thread storing the pair
+   * @param i      index of pair
+   * @return hash
+   */
+  private static long hash(int thread, int i) {
+    return (thread * 100003L + i) * 0x9E3779B97F4A7C15L;
+  }
+}
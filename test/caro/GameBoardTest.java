@@ -5,11 +5,17 @@ import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import caro.board.BoardSubset;
 import caro.board.GameBoard;
+import caro.board.Symmetry;
+import caro.board.ThreatIndex;
+import caro.streak.StreakList;
 
 /**
  * JUnit test class for GameBoard.
@@ -76,6 +82,15 @@ public class GameBoardTest {
   public void testIsOutOfMoves() {
     GameBoard smallBoard = new GameBoard(5);
     assertTrue(smallBoard.isOutOfMoves());
+    smallBoard.initializeBoard();
+    assertFalse(smallBoard.isOutOfMoves());
+    for (int row = 0; row < 5; row++) {
+      for (int col = 0; col < 5; col++) {
+        assertFalse(smallBoard.isOutOfMoves());
+        smallBoard.addMove(row, col, ((row + col) % 2 == 0) ? Game.X : Game.O);
+      }
+    }
+    assertTrue(smallBoard.isOutOfMoves());
   }
 
   /**
@@ -161,6 +176,47 @@ public class GameBoardTest {
     assertTrue(board.isDisconnected(20,20));
   }
 
+  /**
+   * Test getCandidateCells() and getFrontierSize().
+   */
+  @Test
+  public void testCandidateFrontier() {
+    board.initializeBoard();
+    int[] cells = new int[DIMENSION * DIMENSION];
+    assertEquals(0, board.getFrontierSize());
+
+    board.addMove(0, 0, Game.X);
+    assertEquals(3, board.getFrontierSize());
+    board.makeMove(new int[]{0, 1}, new Player(Game.O));
+    assertEquals(4, board.getFrontierSize());
+    int count = board.getCandidateCells(new BoardSubset(0, DIMENSION - 1, 0, DIMENSION - 1), cells);
+    assertEquals(4, count);
+    assertArrayEquals(new int[]{2, 10, 11, 12}, Arrays.copyOf(cells, count));
+
+    // only candidates inside the subset are returned
+    count = board.getCandidateCells(new BoardSubset(0, 1, 2, 2), cells);
+    assertArrayEquals(new int[]{2, 12}, Arrays.copyOf(cells, count));
+
+    board.unmakeMove();
+    assertEquals(3, board.getFrontierSize());
+    assertTrue(board.isDisconnected(0, 2));
+    assertFalse(board.isDisconnected(0, 1));
+
+    // frontier agrees with isDisconnected() across a bitboard word boundary
+    GameBoard bigBoard = new GameBoard(GameBoard.MAXDIM);
+    bigBoard.initializeBoard();
+    bigBoard.addMove(40, 63, Game.X);
+    bigBoard.addMove(41, 64, Game.O);
+    int[] bigCells = new int[bigBoard.getFrontierSize()];
+    count = bigBoard.getCandidateCells(new BoardSubset(new int[]{40, 63},
+            GameBoard.MAXDIM, 3), bigCells);
+    assertEquals(bigBoard.getFrontierSize(), count);
+    for (int i = 0; i < count; i++) {
+      assertFalse(bigBoard.isDisconnected(bigCells[i] / GameBoard.MAXDIM,
+              bigCells[i] % GameBoard.MAXDIM));
+    }
+  }
+
   /**
    * Test getRow().
    */
@@ -301,6 +357,39 @@ public class GameBoardTest {
     assertTrue(board.checkWinningMove(lastMove));
   }
 
+  /**
+   * Test checkMaximumConsecutive() on lines that cross a bitboard word boundary.
+   */
+  @Test
+  public void testCheckMaximumConsecutive() {
+    GameBoard bigBoard = new GameBoard(GameBoard.MAXDIM);
+    bigBoard.initializeBoard();
+    for (int col = 61; col <= 64; col++) {
+      bigBoard.addMove(70, col, Game.X);
+    }
+    bigBoard.addMove(70, 60, Game.O);
+    assertEquals(4, bigBoard.checkMaximumConsecutive(new int[]{70, 63}));
+    assertFalse(bigBoard.checkWinningMove(new int[]{70, 64}));
+    bigBoard.addMove(70, 65, Game.X);
+    assertEquals(5, bigBoard.checkMaximumConsecutive(new int[]{70, 61}));
+    assertTrue(bigBoard.checkWinningMove(new int[]{70, 61}));
+
+    // anti-diagonal through the word boundary
+    for (int i = 0; i < 4; i++) {
+      bigBoard.addMove(10 + i, 66 - i, Game.O);
+    }
+    assertEquals(4, bigBoard.checkMaximumConsecutive(new int[]{12, 64}));
+    bigBoard.addMove(14, 62, Game.O);
+    assertTrue(bigBoard.checkWinningMove(new int[]{11, 65}));
+
+    // streaks longer than five are capped by the search range around the move
+    for (int row = 0; row < GameBoard.MAXDIM; row++) {
+      bigBoard.addMove(row, 98, Game.X);
+    }
+    assertEquals(2 * Game.WIN_CONDITION - 1, bigBoard.checkMaximumConsecutive(new int[]{50, 98}));
+    assertEquals(Game.WIN_CONDITION, bigBoard.checkMaximumConsecutive(new int[]{0, 98}));
+  }
+
   /**
    * Test countConsecutive().
    */
@@ -358,6 +447,239 @@ public class GameBoardTest {
 
   }
 
+  /**
+   * Test countShapes().
+   */
+  @Test
+  public void testCountShapes() {
+    // contiguous streaks are counted like countConsecutive()
+    char[] array = "_XXX_OXX__".replace('_', Game.EMPTY).toCharArray();
+    assertEquals(board.countConsecutive(array, Game.X).toString(),
+            board.countShapes(array, Game.X).toString());
+
+    // broken streaks are counted by their number of symbols
+    array = "_X_XX_OXX_X_".replace('_', Game.EMPTY).toCharArray();
+    assertEquals("Streak length 3, count: 2, unblockedCount: 1\n",
+            board.countShapes(array, Game.X).toString());
+
+    // a broken four can only be completed on its gap, even with both ends open or blocked
+    array = "_X_XXX_".replace('_', Game.EMPTY).toCharArray();
+    assertEquals("Streak length 4, count: 1, unblockedCount: 0\n",
+            board.countShapes(array, Game.X).toString());
+    array = "OXX_XXO".replace('_', Game.EMPTY).toCharArray();
+    assertEquals("Streak length 4, count: 1, unblockedCount: 0\n",
+            board.countShapes(array, Game.X).toString());
+
+    // gaps of more than one position, or shapes longer than a win, do not join streaks
+    array = "XX__XX_XXXX".replace('_', Game.EMPTY).toCharArray();
+    assertEquals("Streak length 2, count: 2, unblockedCount: 1\n"
+                    + "Streak length 4, count: 1, unblockedCount: 0\n",
+            board.countShapes(array, Game.X).toString());
+
+    // streaks of WIN_CONDITION or more are always counted
+    array = "OXXXXXXO".replace('_', Game.EMPTY).toCharArray();
+    assertEquals("Streak length 5, count: 1, unblockedCount: 0\n",
+            board.countShapes(array, Game.X).toString());
+  }
+
+  /**
+   * Test the threat index kept by GameBoard.
+   */
+  @Test
+  public void testThreatIndex() {
+    board.initializeBoard();
+    Player playerX = new Player(Game.X);
+    Player playerO = new Player(Game.O);
+    board.makeMove(new int[]{5, 3}, playerX);
+    board.makeMove(new int[]{5, 4}, playerX);
+    assertEquals(0, board.getThreatCount(playerX, ThreatIndex.OPEN_THREE));
+    // _XX_ and similar windows: cells making an open three
+    assertArrayEquals(new int[]{51, 52, 55, 56},
+            threatCells(board, playerX, ThreatIndex.THREE_MOVE));
+    assertEquals(0, board.getThreatCellCount(playerX, ThreatIndex.FOUR_MOVE));
+
+    // __XXX__: either adjacent cell makes an open four, and only those stop it
+    board.makeMove(new int[]{5, 5}, playerX);
+    assertEquals(1, board.getThreatCount(playerX, ThreatIndex.OPEN_THREE));
+    assertArrayEquals(new int[]{52, 56}, threatCells(board, playerX, ThreatIndex.FOUR_GAIN));
+    assertArrayEquals(new int[]{52, 56}, threatCells(board, playerX, ThreatIndex.THREE_COST));
+    assertArrayEquals(new int[]{51, 52, 56, 57},
+            threatCells(board, playerX, ThreatIndex.FOUR_MOVE));
+    assertTrue(board.isThreatCell(playerX, ThreatIndex.FOUR_MOVE, 5, 1));
+    assertFalse(board.isThreatCell(playerX, ThreatIndex.FOUR_MOVE, 5, 0));
+    assertFalse(board.isThreatCell(playerO, ThreatIndex.FOUR_MOVE, 5, 1));
+    assertEquals(0, board.getThreatCount(playerO, ThreatIndex.OPEN_THREE));
+
+    // _XXXX_: open four with two cells completing a five
+    board.makeMove(new int[]{5, 6}, playerX);
+    assertEquals(1, board.getThreatCount(playerX, ThreatIndex.OPEN_FOUR));
+    assertEquals(0, board.getThreatCount(playerX, ThreatIndex.FOUR));
+    assertEquals(0, board.getThreatCount(playerX, ThreatIndex.OPEN_THREE));
+    assertArrayEquals(new int[]{52, 57}, threatCells(board, playerX, ThreatIndex.FIVE_GAIN));
+
+    // _XXXXO: four with a single cell completing a five
+    board.makeMove(new int[]{5, 7}, playerO);
+    assertEquals(0, board.getThreatCount(playerX, ThreatIndex.OPEN_FOUR));
+    assertEquals(1, board.getThreatCount(playerX, ThreatIndex.FOUR));
+    assertArrayEquals(new int[]{52}, threatCells(board, playerX, ThreatIndex.FIVE_GAIN));
+
+    // XX_XX: broken four completed on its gap
+    board.makeMove(new int[]{0, 0}, playerX);
+    board.makeMove(new int[]{1, 0}, playerX);
+    board.makeMove(new int[]{3, 0}, playerX);
+    board.makeMove(new int[]{4, 0}, playerX);
+    assertEquals(2, board.getThreatCount(playerX, ThreatIndex.FOUR));
+    assertArrayEquals(new int[]{20, 52}, threatCells(board, playerX, ThreatIndex.FIVE_GAIN));
+
+    // XXXXX: five
+    board.makeMove(new int[]{2, 0}, playerX);
+    assertEquals(1, board.getThreatCount(playerX, ThreatIndex.FIVE));
+    // taking back the moves since the open four restores it
+    for (int i = 0; i < 6; i++) {
+      board.unmakeMove();
+    }
+    assertEquals(0, board.getThreatCount(playerX, ThreatIndex.FIVE));
+    assertEquals(1, board.getThreatCount(playerX, ThreatIndex.OPEN_FOUR));
+    assertArrayEquals(new int[]{52, 57}, threatCells(board, playerX, ThreatIndex.FIVE_GAIN));
+  }
+
+  /**
+   * Test that the threat index only depends on the position, not on the moves made and taken
+   * back to reach it.
+   */
+  @Test
+  public void testThreatIndexMatchesReplay() {
+    board.initializeBoard();
+    Player[] players = new Player[]{new Player(Game.X), new Player(Game.O)};
+    Random random = new Random(15);
+    List<int[]> moves = new ArrayList<>();
+    for (int step = 0; step < 300; step++) {
+      if ((moves.size() > 0) && ((random.nextInt(3) == 0) || (moves.size() == 20))) {
+        board.unmakeMove();
+        moves.remove(moves.size() - 1);
+      } else {
+        int[] move;
+        do {
+          // keep moves close together, so that threats are common
+          move = new int[]{3 + random.nextInt(5), 3 + random.nextInt(5)};
+        } while (!board.isLegalMove(move));
+        board.makeMove(move, players[moves.size() % 2]);
+        moves.add(move);
+      }
+      GameBoard replay = new GameBoard(DIMENSION);
+      replay.initializeBoard();
+      for (int i = 0; i < moves.size(); i++) {
+        replay.addMove(moves.get(i), players[i % 2].getSymbol());
+      }
+      for (Player player : players) {
+        for (int threat = ThreatIndex.FIVE; threat <= ThreatIndex.OPEN_THREE; threat++) {
+          assertEquals(replay.getThreatCount(player, threat), board.getThreatCount(player, threat));
+        }
+        for (int kind = ThreatIndex.FIVE_GAIN; kind <= ThreatIndex.THREE_MOVE; kind++) {
+          assertArrayEquals(threatCells(replay, player, kind), threatCells(board, player, kind));
+        }
+      }
+    }
+  }
+
+  /**
+   * Collect the threat cells of a kind a player has on a board.
+   *
+   * @param gameBoard board
+   * @param player    player
+   * @param kind      kind of threat cell
+   * @return cells in row-major order
+   */
+  private static int[] threatCells(GameBoard gameBoard, Player player, int kind) {
+    int[] cells = new int[gameBoard.getThreatCellCount(player, kind)];
+    assertEquals(cells.length, gameBoard.getThreatCells(player, kind, cells));
+    return cells;
+  }
+
+  /**
+   * Test that checkBoardForStreaks() into caller-owned counts does not allocate.
+   */
+  @Test
+  public void testCheckBoardForStreaksDoesNotAllocate() {
+    com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    board.initializeBoard();
+    Player playerX = new Player(Game.X);
+    Player playerO = new Player(Game.O);
+    board.makeMove(new int[]{4, 4}, playerX);
+    board.makeMove(new int[]{4, 5}, playerO);
+    board.makeMove(new int[]{5, 5}, playerX);
+    int[] counts = new int[StreakList.getCountsLength()];
+    int calls = 100000;
+    // warm up, so that class loading and compilation are not measured
+    for (int i = 0; i < calls; i++) {
+      board.checkBoardForStreaks(playerX, counts);
+    }
+    long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    for (int i = 0; i < calls; i++) {
+      board.checkBoardForStreaks((i % 2 == 0) ? playerX : playerO, counts);
+    }
+    long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+    // allowing for the measurement itself, far less than one byte per call
+    assertTrue("allocated " + allocated + " bytes", allocated < calls / 10);
+  }
+
+  /**
+   * Test that streak counts kept up to date by makeMove() and unmakeMove() match a full scan.
+   */
+  @Test
+  public void testIncrementalStreaks() {
+    board.initializeBoard();
+    Player[] players = new Player[]{new Player(Game.X), new Player(Game.O)};
+    Random random = new Random(11);
+    for (int step = 0; step < 400; step++) {
+      if ((board.getMoveCount() > 0) && ((random.nextInt(4) == 0) || board.isOutOfMoves())) {
+        board.unmakeMove();
+      } else {
+        int row, col;
+        do {
+          row = random.nextInt(DIMENSION);
+          col = random.nextInt(DIMENSION);
+        } while (!board.isLegalMove(row, col));
+        board.makeMove(new int[]{row, col}, players[board.getMoveCount() % 2]);
+      }
+      for (Player player : players) {
+        assertEquals(scanForStreaks(board, player.getSymbol()).toString(),
+                board.checkBoardForStreaks(player).toString());
+      }
+    }
+    // copies carry the streak counts of the original
+    GameBoard copy = new GameBoard(board);
+    assertEquals(board.checkBoardForStreaks(players[0]).toString(),
+            copy.checkBoardForStreaks(players[0]).toString());
+  }
+
+  /**
+   * Count streaks of a symbol on every row, column and diagonal long enough to hold a win, reading
+   * each line in increasing column order.
+   *
+   * @param gameBoard board to be scanned
+   * @param symbol    symbol to be searched
+   * @return streaks found
+   */
+  private static StreakList scanForStreaks(GameBoard gameBoard, char symbol) {
+    int dimension = gameBoard.getBoardDimension();
+    StreakList list = new StreakList();
+    for (int i = 0; i < dimension; i++) {
+      list.addStreakList(gameBoard.countShapes(gameBoard.getRow(i), symbol));
+      list.addStreakList(gameBoard.countShapes(gameBoard.getColumn(i), symbol));
+    }
+    for (int diff = Game.WIN_CONDITION - dimension; diff <= dimension - Game.WIN_CONDITION; diff++) {
+      int length = dimension - Math.abs(diff);
+      int row = Math.max(0, diff), col = Math.max(0, -diff);
+      list.addStreakList(gameBoard.countShapes(gameBoard.getDiagonal(row, col,
+              row + length - 1, col + length - 1), symbol));
+      list.addStreakList(gameBoard.countShapes(gameBoard.getDiagonal(row + length - 1,
+              dimension - col - length, row, dimension - 1 - col), symbol));
+    }
+    return list;
+  }
+
   /**
    * Test boardState().
    */
@@ -389,6 +711,117 @@ public class GameBoardTest {
                     "-------------------\n");
   }
 
+  /**
+   * Test makeMove() and unmakeMove().
+   */
+  @Test
+  public void testMakeAndUnmakeMove() {
+    board.initializeBoard();
+    board.addMove(2, 3, Game.X);
+    GameBoard before = new GameBoard(board);
+    int[] move = new int[]{2, 4};
+
+    board.makeMove(move, new Player(Game.O));
+    assertEquals(Game.O, board.returnPosition(move));
+    assertEquals(2, board.getMoveCount());
+    assertArrayEquals(move, board.getLastMove());
+    board.makeMove(new int[]{2, 5}, new Player(Game.X));
+
+    board.unmakeMove();
+    board.unmakeMove();
+    assertTrue(board.isEmpty(2, 4));
+    assertEquals(1, board.getMoveCount());
+    assertArrayEquals(new int[]{2, 3}, board.getLastMove());
+    assertEquals(before.toString(), board.toString());
+
+    // bitboards are restored as well
+    for (int col = 4; col < 8; col++) {
+      board.makeMove(new int[]{2, col}, new Player(Game.X));
+    }
+    assertTrue(board.checkWinningMove(new int[]{2, 7}));
+    board.unmakeMove();
+    assertEquals(4, board.checkMaximumConsecutive(new int[]{2, 3}));
+  }
+
+  /**
+   * Test makeMove() on an illegal move.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testMakeIllegalMove() {
+    board.initializeBoard();
+    board.addMove(2, 3, Game.X);
+    board.makeMove(new int[]{2, 3}, new Player(Game.O));
+  }
+
+  /**
+   * Test getHash(), equals() and hashCode().
+   */
+  @Test
+  public void testHashAndEquals() {
+    board.initializeBoard();
+    GameBoard other = new GameBoard(DIMENSION);
+    other.initializeBoard();
+    assertEquals(board, other);
+
+    // same position reached through different move orders
+    board.addMove(1, 1, Game.X);
+    board.addMove(2, 2, Game.O);
+    board.addMove(3, 3, Game.X);
+    other.addMove(3, 3, Game.X);
+    other.addMove(2, 2, Game.O);
+    other.addMove(1, 1, Game.X);
+    assertEquals(board.getHash(), other.getHash());
+    assertEquals(board, other);
+    assertEquals(board.hashCode(), other.hashCode());
+
+    // hash is restored when a move is taken back
+    long hash = board.getHash();
+    board.makeMove(new int[]{4, 4}, new Player(Game.O));
+    assertNotEquals(hash, board.getHash());
+    assertNotEquals(board, other);
+    board.unmakeMove();
+    assertEquals(hash, board.getHash());
+    assertEquals(board, other);
+
+    // swapping symbols changes the position
+    GameBoard swapped = new GameBoard(DIMENSION);
+    swapped.initializeBoard();
+    swapped.addMove(1, 1, Game.O);
+    swapped.addMove(2, 2, Game.X);
+    swapped.addMove(3, 3, Game.O);
+    assertNotEquals(board.getHash(), swapped.getHash());
+    assertNotEquals(board, swapped);
+    assertEquals(board, new GameBoard(board));
+  }
+
+  /**
+   * Test that getSymmetryHash() is the hash of the rotated or reflected position.
+   */
+  @Test
+  public void testSymmetryHash() {
+    board.initializeBoard();
+    board.addMove(1, 2, Game.X);
+    board.addMove(4, 7, Game.O);
+    board.addMove(8, 3, Game.X);
+    for (int symmetry = 0; symmetry < Symmetry.NUM_SYMMETRIES; symmetry++) {
+      GameBoard transformed = new GameBoard(DIMENSION);
+      transformed.initializeBoard();
+      for (int[] move : new int[][]{{1, 2}, {4, 7}, {8, 3}}) {
+        int cell = Symmetry.transform(symmetry, move[0], move[1], DIMENSION);
+        transformed.addMove(cell / DIMENSION, cell % DIMENSION, board.returnPosition(move));
+      }
+      assertEquals(transformed.getHash(), board.getSymmetryHash(symmetry));
+    }
+    assertEquals(board.getHash(), board.getSymmetryHash(Symmetry.IDENTITY));
+
+    // hashes follow the position as moves are made and taken back
+    long rotated = board.getSymmetryHash(1);
+    board.makeMove(new int[]{0, 0}, new Player(Game.O));
+    assertNotEquals(rotated, board.getSymmetryHash(1));
+    board.unmakeMove();
+    assertEquals(rotated, board.getSymmetryHash(1));
+  }
+
   public static void main(String[] args) {
     GameBoard board = new GameBoard( 10);
     board.initializeBoard();
@@ -7,6 +7,8 @@ import org.junit.Test;
 
 import java.util.Arrays;
 
+import caro.AI.TrainedAI;
+
 public class GameTest {
   private int dimension = 15;
   private Game caro;
@@ -45,6 +47,23 @@ public class GameTest {
   }
 
 
+  /**
+   * Test that training on several worker threads learns into the returned AI's table.
+   */
+  @Test
+  public void testTrainAiParallel() {
+    TrainedAI ai = caro.trainAi(4, 2);
+    assertTrue(ai.getQTable().getSize() > 0);
+  }
+
+  /**
+   * Test for training with bad number of workers.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testTrainAiNoWorkers() {
+    caro.trainAi(4, 0);
+  }
+
   /**
    * Play game
    *
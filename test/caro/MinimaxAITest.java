@@ -3,11 +3,16 @@ package caro;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import caro.AI.MinimaxAI;
+import caro.AI.TranspositionTable;
 import caro.board.GameBoard;
+import caro.board.ThreatIndex;
 import caro.streak.StreakList;
 
 import static org.junit.Assert.*;
@@ -117,4 +122,413 @@ public class MinimaxAITest {
     assertEquals(ai.calculateUtility(list3, false), 1, delta);
   }
 
-}
\ No newline at end of file
+  /**
+   * Test that board states searched by getOptimalMove() are kept in the transposition table.
+   */
+  @Test
+  public void testTranspositionTable() {
+    GameBoard before = new GameBoard(board);
+    int[] move = ai.getOptimalMove(board, lastMove, false);
+    assertTrue(board.isLegalMove(move));
+    assertEquals(before, board);
+
+    // root is stored with the full search depth, so the next search can start from its best move
+    TranspositionTable.Entry entry = new TranspositionTable.Entry();
+    assertTrue(ai.getTranspositionTable().probe(board.getHash(), entry));
+    assertEquals(2, entry.getDepth());
+    assertTrue(board.isLegalMove(TranspositionTable.unpackMove(entry.getBestMove())));
+    board.makeMove(move, aiPlayer);
+    assertTrue(ai.getTranspositionTable().probe(board.getHash(), entry));
+  }
+
+  /**
+   * Test getOptimalMove() with a time budget.
+   */
+  @Test
+  public void testGetOptimalMoveWithBudget() {
+    GameBoard bigBoard = new GameBoard(15);
+    bigBoard.initializeBoard();
+    MinimaxAI bigAi = new MinimaxAI(15, aiPlayer, opponent);
+    for (int col = 5; col < 9; col++) {
+      bigBoard.addMove(7, col, Game.X);
+      bigBoard.addMove(9, col + 1, Game.O);
+    }
+    bigBoard.addMove(7, 4, Game.O);
+    int[] move = bigAi.getOptimalMove(bigBoard, new int[]{7, 4}, Duration.ofSeconds(5));
+    assertArrayEquals(new int[]{7, 9}, move);
+
+    // search stops close to the deadline even when the board is large
+    GameBoard maxBoard = new GameBoard(GameBoard.MAXDIM);
+    maxBoard.initializeBoard();
+    maxBoard.addMove(50, 50, Game.O);
+    maxBoard.addMove(50, 51, Game.X);
+    maxBoard.addMove(51, 50, Game.O);
+    MinimaxAI maxAi = new MinimaxAI(GameBoard.MAXDIM, aiPlayer, opponent);
+    long start = System.nanoTime();
+    move = maxAi.getOptimalMove(maxBoard, new int[]{51, 50}, Duration.ofMillis(200));
+    assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+    assertTrue(maxBoard.isLegalMove(move));
+    assertEquals(3, maxBoard.getMoveCount());
+  }
+
+  /**
+   * Test that getOptimalMove() completes a five straight away and otherwise only searches the
+   * moves stopping the opponent's five.
+   */
+  @Test
+  public void testForcedMoves() {
+    GameBoard bigBoard = new GameBoard(15);
+    bigBoard.initializeBoard();
+    bigBoard.addMove(7, 3, Game.X);
+    for (int col = 4; col < 8; col++) {
+      bigBoard.addMove(7, col, Game.O);
+    }
+    bigBoard.addMove(9, 5, Game.X);
+    bigBoard.addMove(9, 6, Game.X);
+    bigBoard.addMove(10, 7, Game.X);
+    int[] last = new int[]{7, 7};
+    MinimaxAI bigAi = new MinimaxAI(15, aiPlayer, opponent, 2, 3);
+    bigAi.setThreatSolver(null);
+    bigAi.setQuiescenceDepth(0);
+    int candidates = bigAi.getActionSet(bigBoard, last, 3).size();
+
+    // opponent's four has to be stopped, so only one move is searched at the root
+    assertArrayEquals(new int[]{7, 8}, bigAi.getOptimalMove(bigBoard, last, false));
+    assertTrue(bigAi.getNodeCount() <= candidates + 1);
+
+    // a five wins before the opponent's four matters
+    bigBoard.addMove(9, 4, Game.X);
+    bigBoard.addMove(9, 7, Game.X);
+    bigBoard.addMove(9, 3, Game.O);
+    last = new int[]{9, 3};
+    assertArrayEquals(new int[]{9, 8}, bigAi.getOptimalMove(bigBoard, last, false));
+    assertEquals(1, bigAi.getNodeCount());
+    assertEquals(11, bigBoard.getMoveCount());
+  }
+
+  /**
+   * Test that getOptimalMove() plays a win found by the threat solver without searching, even
+   * when the win is out of the search radius of the last move.
+   */
+  @Test
+  public void testThreatSolverWin() {
+    GameBoard bigBoard = new GameBoard(15);
+    bigBoard.initializeBoard();
+    bigBoard.addMove(7, 2, Game.O);
+    bigBoard.addMove(7, 3, Game.X);
+    bigBoard.addMove(7, 4, Game.X);
+    bigBoard.addMove(7, 5, Game.X);
+    bigBoard.addMove(8, 6, Game.X);
+    bigBoard.addMove(9, 6, Game.X);
+    bigBoard.addMove(0, 0, Game.O);
+    MinimaxAI bigAi = new MinimaxAI(15, aiPlayer, opponent, 2, 3);
+    assertArrayEquals(new int[]{7, 6}, bigAi.getOptimalMove(bigBoard, new int[]{0, 0}, false));
+    assertTrue(bigAi.getNodeCount() < 10);
+
+    bigAi.setThreatSolver(null);
+    assertFalse(Arrays.equals(new int[]{7, 6},
+            bigAi.getOptimalMove(bigBoard, new int[]{0, 0}, false)));
+  }
+
+  /**
+   * Test that quiescence search sees a split three of the opponent turning into an open four
+   * just past the depth limit.
+   */
+  @Test
+  public void testQuiescence() {
+    GameBoard bigBoard = new GameBoard(15);
+    bigBoard.initializeBoard();
+    bigBoard.addMove(4, 10, Game.O);
+    bigBoard.addMove(5, 9, Game.O);
+    bigBoard.addMove(7, 7, Game.O);
+    bigBoard.addMove(8, 10, Game.O);
+    bigBoard.addMove(10, 5, Game.O);
+    bigBoard.addMove(5, 6, Game.X);
+    bigBoard.addMove(6, 7, Game.X);
+    bigBoard.addMove(8, 5, Game.X);
+    bigBoard.addMove(9, 5, Game.X);
+    bigBoard.addMove(9, 6, Game.X);
+    bigBoard.addMove(10, 9, Game.X);
+    int[] last = new int[]{9, 5};
+    List<String> defences = Arrays.asList(Arrays.toString(new int[]{3, 11}),
+            Arrays.toString(new int[]{6, 8}), Arrays.toString(new int[]{8, 6}));
+    MinimaxAI bigAi = new MinimaxAI(15, aiPlayer, opponent, 1, 3);
+    bigAi.setThreatSolver(null);
+    assertTrue(defences.contains(Arrays.toString(bigAi.getOptimalMove(bigBoard, last, false))));
+
+    MinimaxAI horizonAi = new MinimaxAI(15, aiPlayer, opponent, 1, 3);
+    horizonAi.setThreatSolver(null);
+    horizonAi.setQuiescenceDepth(0);
+    assertFalse(defences.contains(
+            Arrays.toString(horizonAi.getOptimalMove(bigBoard, last, false))));
+    assertEquals(11, bigBoard.getMoveCount());
+  }
+
+  /**
+   * Test for setting a negative quiescence depth.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadQuiescenceDepth() {
+    ai.setQuiescenceDepth(-1);
+  }
+
+  /**
+   * Test that late move reductions search fewer board states than a search at full depth.
+   */
+  @Test
+  public void testLateMoveReductions() {
+    GameBoard bigBoard = new GameBoard(15);
+    bigBoard.initializeBoard();
+    bigBoard.addMove(7, 7, Game.X);
+    bigBoard.addMove(7, 8, Game.O);
+    bigBoard.addMove(8, 8, Game.X);
+    bigBoard.addMove(6, 6, Game.O);
+    bigBoard.addMove(8, 6, Game.X);
+    bigBoard.addMove(9, 9, Game.O);
+    int[] last = new int[]{9, 9};
+    MinimaxAI fullAi = new MinimaxAI(15, aiPlayer, opponent, 4, 2);
+    fullAi.setThreatSolver(null);
+    fullAi.setLateMoveReductions(MinimaxAI.DEFAULT_LATE_MOVE_COUNT, 0);
+    assertTrue(bigBoard.isLegalMove(fullAi.getOptimalMove(bigBoard, last, false)));
+
+    MinimaxAI reducedAi = new MinimaxAI(15, aiPlayer, opponent, 4, 2);
+    reducedAi.setThreatSolver(null);
+    assertTrue(bigBoard.isLegalMove(reducedAi.getOptimalMove(bigBoard, last, false)));
+    assertTrue(reducedAi.getNodeCount() < fullAi.getNodeCount());
+    assertEquals(6, bigBoard.getMoveCount());
+  }
+
+  /**
+   * Test for bad late move reduction settings.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadLateMoveReductions() {
+    ai.setLateMoveReductions(0, 1);
+  }
+
+  /**
+   * Test for setting a negative aspiration window.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadAspirationWindow() {
+    ai.setAspirationWindow(-0.1);
+  }
+
+  /**
+   * Test that a root search failing high on an aspiration window below 0 stores a move it searched,
+   * with a lower bound that move really reaches, rather than a move left unsearched.
+   */
+  @Test
+  public void testAspirationFailHigh() {
+    Random rand = new Random(5);
+    GameBoard state = new GameBoard(9);
+    state.initializeBoard();
+    int[] last = null;
+    for (int i = 0; i < 6; i++) {
+      do {
+        last = new int[]{2 + rand.nextInt(5), 2 + rand.nextInt(5)};
+      } while (!state.isLegalMove(last));
+      state.addMove(last, (i % 2 == 0) ? Game.O : Game.X);
+    }
+    long rootHash = state.getHash();
+    List<double[]> lowerBounds = new ArrayList<double[]>();
+    TranspositionTable table = new TranspositionTable() {
+      @Override
+      public void store(long key, int depth, byte bound, double score, int bestMove) {
+        if ((key == rootHash) && (bound == TranspositionTable.LOWER_BOUND) && (depth <= 4)) {
+          lowerBounds.add(new double[]{depth, score, bestMove});
+        }
+        super.store(key, depth, bound, score, bestMove);
+      }
+    };
+    MinimaxAI searchAi = new MinimaxAI(9, aiPlayer, opponent, 4, 3, table);
+    searchAi.setThreatSolver(null);
+    searchAi.setQuiescenceDepth(0);
+    searchAi.setLateMoveReductions(MinimaxAI.DEFAULT_LATE_MOVE_COUNT, 0);
+    searchAi.setAspirationWindow(0.01);
+    searchAi.getOptimalMove(state, last, Duration.ofMillis(500));
+
+    boolean negativeBound = false;
+    for (double[] lowerBound : lowerBounds) {
+      int[] move = TranspositionTable.unpackMove((int) lowerBound[2]);
+      state.makeMove(move, aiPlayer);
+      double utility = minimax(searchAi, state, move, 1, (int) lowerBound[0], false);
+      state.unmakeMove();
+      assertTrue(utility >= lowerBound[1]);
+      negativeBound |= lowerBound[1] < 0;
+    }
+    assertTrue(negativeBound);
+  }
+
+  /**
+   * Test that a closed AI keeps searching, sequentially, and can be closed again.
+   */
+  @Test
+  public void testClose() {
+    ai.setParallelSearch(MinimaxAI.ParallelMode.ROOT_SPLIT, 2);
+    assertTrue(board.isLegalMove(ai.getOptimalMove(board, lastMove, false)));
+    ai.close();
+    assertTrue(board.isLegalMove(ai.getOptimalMove(board, lastMove, false)));
+    ai.close();
+  }
+
+  /**
+   * Moves a player has to choose from: cells completing a five of the other player if there are
+   * any, otherwise every candidate move.
+   */
+  private List<int[]> forcedMoves(MinimaxAI searchAi, GameBoard state, int[] last,
+                                  Player other) {
+    int[] cells = new int[state.getBoardDimension() * state.getBoardDimension()];
+    int count = state.getThreatCells(other, ThreatIndex.FIVE_GAIN, cells);
+    if (count == 0) {
+      return searchAi.getActionSet(state, last, 3);
+    }
+    List<int[]> moves = new ArrayList<int[]>();
+    for (int i = 0; i < count; i++) {
+      moves.add(new int[]{cells[i] / state.getBoardDimension(),
+          cells[i] % state.getBoardDimension()});
+    }
+    return moves;
+  }
+
+  /**
+   * Full-width minimax without pruning, used as reference for the alpha-beta search. Like the
+   * search, a player who can complete a five wins, and a player who cannot only tries the moves
+   * stopping the other player's fives.
+   */
+  private double minimax(MinimaxAI searchAi, GameBoard state, int[] last, int depth,
+                         int searchDepth, boolean aiToMove) {
+    if (state.checkWinningMove(last)) {
+      return aiToMove ? -MinimaxAI.winUtility : MinimaxAI.winUtility;
+    }
+    if (state.isOutOfMoves() || (depth >= searchDepth)) {
+      return searchAi.calculateUtilityOfBoardState(state);
+    }
+    Player player = aiToMove ? aiPlayer : opponent;
+    Player other = aiToMove ? opponent : aiPlayer;
+    if (state.getThreatCellCount(player, ThreatIndex.FIVE_GAIN) > 0) {
+      return aiToMove ? MinimaxAI.winUtility : -MinimaxAI.winUtility;
+    }
+    double utility = aiToMove ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    for (int[] move : forcedMoves(searchAi, state, last, other)) {
+      state.makeMove(move, aiToMove ? aiPlayer : opponent);
+      double moveUtility = minimax(searchAi, state, move, depth + 1, searchDepth, !aiToMove);
+      state.unmakeMove();
+      utility = aiToMove ? Math.max(utility, moveUtility) : Math.min(utility, moveUtility);
+    }
+    return utility;
+  }
+
+  /**
+   * Test that alpha-beta search, sequential and split over threads at the root, picks a move that
+   * full-width minimax considers optimal.
+   */
+  @Test
+  public void testNegamaxMatchesMinimax() {
+    Random rand = new Random(1);
+    for (int searchDepth = 2; searchDepth <= 3; searchDepth++) {
+      for (int game = 0; game < 3; game++) {
+        GameBoard state = new GameBoard(9);
+        state.initializeBoard();
+        int[] last = null;
+        for (int i = 0; i < 6; i++) {
+          do {
+            last = new int[]{2 + rand.nextInt(5), 2 + rand.nextInt(5)};
+          } while (!state.isLegalMove(last));
+          state.addMove(last, (i % 2 == 0) ? Game.O : Game.X);
+        }
+        MinimaxAI searchAi = new MinimaxAI(9, aiPlayer, opponent, searchDepth, 3);
+        searchAi.setThreatSolver(null);
+        searchAi.setQuiescenceDepth(0);
+        searchAi.setLateMoveReductions(MinimaxAI.DEFAULT_LATE_MOVE_COUNT, 0);
+
+        double best = Double.NEGATIVE_INFINITY;
+        int bestStreak = 0;
+        List<String> optimalMoves = new ArrayList<String>();
+        long fullWidthMoves = 0;
+        List<int[]> rootMoves = searchAi.getActionSet(state, last, 3);
+        if (state.getThreatCellCount(aiPlayer, ThreatIndex.FIVE_GAIN) == 0) {
+          rootMoves = forcedMoves(searchAi, state, last, opponent);
+        }
+        for (int[] move : rootMoves) {
+          state.makeMove(move, aiPlayer);
+          double utility = minimax(searchAi, state, move, 1, searchDepth, false);
+          int streak = state.checkMaximumConsecutive(move);
+          state.unmakeMove();
+          fullWidthMoves++;
+          if ((utility > best) || ((utility == best) && (streak > bestStreak))) {
+            best = utility;
+            bestStreak = streak;
+            optimalMoves.clear();
+          }
+          if ((utility == best) && (streak == bestStreak)) {
+            optimalMoves.add(Arrays.toString(move));
+          }
+        }
+
+        int[] move = searchAi.getOptimalMove(state, last, false);
+        assertTrue(optimalMoves.contains(Arrays.toString(move)));
+        assertTrue(searchAi.getNodeCount() >= fullWidthMoves);
+
+        MinimaxAI parallelAi = new MinimaxAI(9, aiPlayer, opponent, searchDepth, 3);
+        parallelAi.setParallelSearch(MinimaxAI.ParallelMode.ROOT_SPLIT, 4);
+        parallelAi.setThreatSolver(null);
+        parallelAi.setQuiescenceDepth(0);
+        parallelAi.setLateMoveReductions(MinimaxAI.DEFAULT_LATE_MOVE_COUNT, 0);
+        move = parallelAi.getOptimalMove(state, last, false);
+        parallelAi.close();
+        assertTrue(optimalMoves.contains(Arrays.toString(move)));
+
+        MinimaxAI lazySmpAi = new MinimaxAI(9, aiPlayer, opponent, searchDepth, 3);
+        lazySmpAi.setParallelSearch(MinimaxAI.ParallelMode.LAZY_SMP, 3);
+        move = lazySmpAi.getOptimalMove(state, last, false);
+        lazySmpAi.close();
+        assertTrue(state.isLegalMove(move));
+        assertEquals(6, state.getMoveCount());
+      }
+    }
+  }
+
+  /**
+   * Test that search split over threads at the root finds the same optimal moves every time it
+   * searches the same board state with default settings, deep enough for late moves to be reduced
+   * and for killer moves and history scores to reorder moves.
+   */
+  @Test
+  public void testRootSplitIsDeterministic() {
+    Random rand = new Random(2);
+    for (int game = 0; game < 3; game++) {
+      GameBoard state = new GameBoard(9);
+      state.initializeBoard();
+      int[] last = null;
+      for (int i = 0; i < 6; i++) {
+        do {
+          last = new int[]{2 + rand.nextInt(5), 2 + rand.nextInt(5)};
+        } while (!state.isLegalMove(last));
+        state.addMove(last, (i % 2 == 0) ? Game.O : Game.X);
+      }
+      String optimalMoves = null;
+      double utility = 0;
+      for (int run = 0; run < 4; run++) {
+        MinimaxAI parallelAi = new MinimaxAI(9, aiPlayer, opponent, 4, 3);
+        parallelAi.setParallelSearch(MinimaxAI.ParallelMode.ROOT_SPLIT, 4);
+        int[] move = parallelAi.getOptimalMove(state, last, false);
+        parallelAi.close();
+        assertTrue(state.isLegalMove(move));
+        assertEquals(6, state.getMoveCount());
+        List<String> moves = new ArrayList<String>();
+        for (int[] optimalMove : parallelAi.getOptimalMoves()) {
+          moves.add(Arrays.toString(optimalMove));
+        }
+        assertTrue(moves.contains(Arrays.toString(move)));
+        if (run == 0) {
+          optimalMoves = moves.toString();
+          utility = parallelAi.getRootUtility();
+        } else {
+          assertEquals(optimalMoves, moves.toString());
+          assertEquals(utility, parallelAi.getRootUtility(), 0);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package caro;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import caro.AI.QTable;
+import caro.AI.TranspositionTable;
+
+/**
+ * JUnit test class for QTable.
+ */
+public class QTableTest {
+  private QTable table;
+  private double delta = 0.0001;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Set up test case.
+   */
+  @Before
+  public void setUp() {
+    table = new QTable(16);
+  }
+
+  /**
+   * Test for bad construction of QTable object.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadConstruction() {
+    new QTable(0);
+  }
+
+  /**
+   * Test getCapacity().
+   */
+  @Test
+  public void testGetCapacity() {
+    assertEquals(16, table.getCapacity());
+    assertEquals(32, new QTable(17).getCapacity());
+  }
+
+  /**
+   * Test put(), get() and contains().
+   */
+  @Test
+  public void testPutAndGet() {
+    int move = TranspositionTable.packMove(7, 9);
+    assertEquals(0, table.get(5L, move), delta);
+    assertFalse(table.contains(5L, move));
+
+    table.put(5L, move, 0.25f);
+    assertTrue(table.contains(5L, move));
+    assertEquals(0.25, table.get(5L, move), delta);
+    assertFalse(table.contains(5L, TranspositionTable.packMove(9, 7)));
+    assertFalse(table.contains(6L, move));
+
+    table.put(5L, move, -0.5f);
+    assertEquals(-0.5, table.get(5L, move), delta);
+    assertEquals(1, table.getSize());
+
+    table.clear();
+    assertFalse(table.contains(5L, move));
+    assertEquals(0, table.getSize());
+  }
+
+  /**
+   * Test getMax().
+   */
+  @Test
+  public void testGetMax() {
+    int[] moves = {TranspositionTable.packMove(1, 2), TranspositionTable.packMove(2, 1),
+        TranspositionTable.packMove(3, 3)};
+    assertEquals(Float.NEGATIVE_INFINITY, table.getMax(5L, moves, 0), delta);
+    assertEquals(0, table.getMax(5L, moves, 3), delta);
+    table.put(5L, moves[0], -0.5f);
+    table.put(5L, moves[1], -0.25f);
+    assertEquals(-0.25, table.getMax(5L, moves, 2), delta);
+    assertEquals(0, table.getMax(5L, moves, 3), delta);
+  }
+
+  /**
+   * Test that the table grows and keeps every pair once it fills up.
+   */
+  @Test
+  public void testGrow() {
+    for (int i = 0; i < 100; i++) {
+      table.put(i * 0x9E3779B97F4A7C15L, TranspositionTable.packMove(i % 15, i / 15), i);
+    }
+    assertEquals(100, table.getSize());
+    assertTrue(table.getCapacity() >= 150);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, table.get(i * 0x9E3779B97F4A7C15L,
+              TranspositionTable.packMove(i % 15, i / 15)), delta);
+    }
+  }
+
+  /**
+   * Test that a table saved to a snapshot file is loaded back with every pair.
+   */
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    for (int i = 0; i < 100; i++) {
+      table.put(i * 0x9E3779B97F4A7C15L, TranspositionTable.packMove(i % 15, i / 15), i);
+    }
+    Path file = folder.newFile("table.qtable").toPath();
+    table.save(file);
+    assertEquals(16 + 12 * table.getCapacity(), Files.size(file));
+
+    QTable loaded = QTable.load(file);
+    assertEquals(100, loaded.getSize());
+    assertEquals(table.getCapacity(), loaded.getCapacity());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, loaded.get(i * 0x9E3779B97F4A7C15L,
+              TranspositionTable.packMove(i % 15, i / 15)), delta);
+    }
+    assertFalse(loaded.contains(1L, TranspositionTable.packMove(0, 0)));
+
+    // a loaded table can be changed like any other, leaving the file as it was
+    loaded.put(1L, TranspositionTable.packMove(0, 0), 0.5f);
+    assertEquals(0.5, loaded.get(1L, TranspositionTable.packMove(0, 0)), delta);
+    assertEquals(101, loaded.getSize());
+    assertFalse(QTable.load(file).contains(1L, TranspositionTable.packMove(0, 0)));
+
+    // a loaded table can be saved over the file it was loaded from
+    QTable reloaded = QTable.load(file);
+    reloaded.save(file);
+    assertEquals(99, reloaded.get(99 * 0x9E3779B97F4A7C15L,
+            TranspositionTable.packMove(99 % 15, 99 / 15)), delta);
+    assertEquals(100, QTable.load(file).getSize());
+  }
+
+  /**
+   * Test that loading a file that is not a snapshot fails.
+   */
+  @Test(expected = IOException.class)
+  public void testLoadBadFile() throws IOException {
+    Path file = folder.newFile("bad.qtable").toPath();
+    Files.write(file, new byte[64]);
+    QTable.load(file);
+  }
+
+  /**
+   * Test that loading a truncated snapshot fails.
+   */
+  @Test(expected = IOException.class)
+  public void testLoadTruncatedFile() throws IOException {
+    Path file = folder.newFile("truncated.qtable").toPath();
+    table.save(file);
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+    QTable.load(file);
+  }
+
+  /**
+   * Test that looking up a missing pair in a table loaded from a snapshot with no free slot fails,
+   * rather than probing forever.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testLoadCorruptKeys() throws IOException {
+    Path file = folder.newFile("corrupt.qtable").toPath();
+    table.save(file);
+    byte[] bytes = Files.readAllBytes(file);
+    // header says the table is empty, but every key is taken
+    Arrays.fill(bytes, 16, 16 + 8 * table.getCapacity(), (byte) 1);
+    Files.write(file, bytes);
+    QTable.load(file).get(5L, TranspositionTable.packMove(7, 9));
+  }
+}
@@ -0,0 +1,82 @@
+package caro;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import caro.AI.ReplayBuffer;
+import caro.AI.TranspositionTable;
+
+/**
+ * JUnit test class for ReplayBuffer.
+ */
+public class ReplayBufferTest {
+  private ReplayBuffer buffer;
+  private double delta = 0.0001;
+
+  /**
+   * Set up test case.
+   */
+  @Before
+  public void setUp() {
+    buffer = new ReplayBuffer(2, 15);
+  }
+
+  /**
+   * Test for bad construction of ReplayBuffer object.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadConstruction() {
+    new ReplayBuffer(0, 15);
+  }
+
+  /**
+   * Test add() and the getters of a transition.
+   */
+  @Test
+  public void testAddAndGet() {
+    assertEquals(0, buffer.getSize());
+    assertEquals(2, buffer.getCapacity());
+    assertEquals(15, buffer.getBoardDimension());
+
+    int[] nextMoves = {TranspositionTable.packMove(14, 14), TranspositionTable.packMove(0, 3),
+        TranspositionTable.packMove(4, 4)};
+    buffer.add(5L, TranspositionTable.packMove(7, 7), -1f, 6L, nextMoves, 3);
+    assertEquals(1, buffer.getSize());
+    assertEquals(5L, buffer.getStateHash(0));
+    assertEquals(TranspositionTable.packMove(7, 7), buffer.getMove(0));
+    assertEquals(-1, buffer.getReward(0), delta);
+    assertEquals(6L, buffer.getNextStateHash(0));
+
+    // next moves come back in cell order
+    int[] moves = new int[15 * 15];
+    assertEquals(3, buffer.getNextMoves(0, moves));
+    assertEquals(TranspositionTable.packMove(0, 3), moves[0]);
+    assertEquals(TranspositionTable.packMove(4, 4), moves[1]);
+    assertEquals(TranspositionTable.packMove(14, 14), moves[2]);
+
+    buffer.clear();
+    assertEquals(0, buffer.getSize());
+  }
+
+  /**
+   * Test that the oldest transition is overwritten once the buffer is full.
+   */
+  @Test
+  public void testOverwriteOldest() {
+    int[] nextMoves = {TranspositionTable.packMove(1, 1), TranspositionTable.packMove(2, 2)};
+    buffer.add(1L, 0, 0f, 11L, nextMoves, 2);
+    buffer.add(2L, 0, 0f, 12L, nextMoves, 2);
+    buffer.add(3L, 0, 1f, 13L, nextMoves, 1);
+    assertEquals(2, buffer.getSize());
+    assertEquals(3L, buffer.getStateHash(0));
+    assertEquals(2L, buffer.getStateHash(1));
+
+    // the overwritten transition's next moves are cleared too
+    int[] moves = new int[15 * 15];
+    assertEquals(1, buffer.getNextMoves(0, moves));
+    assertEquals(TranspositionTable.packMove(1, 1), moves[0]);
+    assertEquals(2, buffer.getNextMoves(1, moves));
+  }
+}
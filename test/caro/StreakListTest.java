@@ -85,6 +85,28 @@ public class StreakListTest {
             "Streak length 4, count: 1, unblockedCount: 0\n");
   }
 
+  /**
+   * Test StreakList as a view over caller-owned counts.
+   */
+  @Test
+  public void testCountsView() {
+    int[] counts = new int[StreakList.getCountsLength()];
+    StreakList view = new StreakList(counts);
+    StreakList.addStreak(counts, 3, 0);
+    StreakList.addStreak(counts, 3, 2);
+    StreakList.addStreak(counts, 7, 2);
+    assertEquals(1, view.getCount(1));
+    assertEquals(1, view.getUnblockedCount(1));
+    assertEquals(Game.WIN_CONDITION, view.getMaxStreakLength());
+
+    // changes made through the view and its streaks are written to counts
+    view.addStreak(2, 1);
+    view.getStreak(0).updateStreak(0);
+    assertEquals(2, counts[0]);
+    assertEquals(1, counts[1]);
+    assertEquals(view.getStreak(1).getCount(), view.getCount(1));
+  }
+
   @Test
   public void testToString() {
     assertEquals(list1.toString(), "There is no streak.\n");
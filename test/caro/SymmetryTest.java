@@ -0,0 +1,51 @@
+package caro;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import caro.board.Symmetry;
+
+/**
+ * JUnit test class for Symmetry.
+ */
+public class SymmetryTest {
+  private final int dimension = 7;
+
+  /**
+   * Test transform() on a corner and an off-center position.
+   */
+  @Test
+  public void testTransform() {
+    assertEquals(2 * dimension + 5, Symmetry.transform(Symmetry.IDENTITY, 2, 5, dimension));
+    // corner (0, 0) visits every corner under rotation
+    assertEquals(6, Symmetry.transform(1, 0, 0, dimension));
+    assertEquals(48, Symmetry.transform(2, 0, 0, dimension));
+    assertEquals(42, Symmetry.transform(3, 0, 0, dimension));
+    // center stays in place
+    for (int symmetry = 0; symmetry < Symmetry.NUM_SYMMETRIES; symmetry++) {
+      assertEquals(24, Symmetry.transform(symmetry, 3, 3, dimension));
+    }
+  }
+
+  /**
+   * Test that the 8 images of a position with no symmetry of its own are all different.
+   */
+  @Test
+  public void testDistinctImages() {
+    boolean[] seen = new boolean[dimension * dimension];
+    for (int symmetry = 0; symmetry < Symmetry.NUM_SYMMETRIES; symmetry++) {
+      int cell = Symmetry.transform(symmetry, 1, 4, dimension);
+      assertFalse(seen[cell]);
+      seen[cell] = true;
+    }
+  }
+
+  /**
+   * Test for a symmetry out of range.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadSymmetry() {
+    Symmetry.transform(Symmetry.NUM_SYMMETRIES, 0, 0, dimension);
+  }
+}
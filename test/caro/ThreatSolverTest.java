@@ -0,0 +1,96 @@
+package caro;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import caro.AI.ThreatSolver;
+import caro.board.GameBoard;
+
+/**
+ * JUnit test class for ThreatSolver.
+ */
+public class ThreatSolverTest {
+  private GameBoard board = new GameBoard(15);
+  private Player playerX = new Player(Game.X);
+  private Player playerO = new Player(Game.O);
+  private ThreatSolver solver;
+
+  /**
+   * Set up test case.
+   */
+  @Before
+  public void setUp() {
+    board.initializeBoard();
+    solver = new ThreatSolver();
+  }
+
+  /**
+   * Test for bad construction of ThreatSolver object.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadConstruction() {
+    new ThreatSolver(0, 16, 4);
+  }
+
+  /**
+   * Test a win by continuous fours: OXXX_ four forces a block, after which the column makes an
+   * open four.
+   */
+  @Test
+  public void testVictoryByFours() {
+    board.addMove(7, 2, Game.O);
+    board.addMove(7, 3, Game.X);
+    board.addMove(7, 4, Game.X);
+    board.addMove(7, 5, Game.X);
+    board.addMove(8, 6, Game.X);
+    board.addMove(9, 6, Game.X);
+    board.addMove(12, 12, Game.O);
+    GameBoard before = new GameBoard(board);
+
+    assertArrayEquals(new int[]{7, 6}, solver.findWin(board, playerX, playerO));
+    assertEquals(before, board);
+    assertNull(solver.findWin(board, playerO, playerX));
+
+    // a four of the defender has to be stopped first, and stopping it breaks the sequence
+    board.addMove(2, 2, Game.O);
+    board.addMove(2, 3, Game.O);
+    board.addMove(2, 4, Game.O);
+    board.addMove(2, 5, Game.O);
+    board.addMove(2, 6, Game.X);
+    assertNull(solver.findWin(board, playerX, playerO));
+  }
+
+  /**
+   * Test a win by threes: two open twos crossing make a double open three, which fours alone
+   * cannot win.
+   */
+  @Test
+  public void testVictoryByThrees() {
+    board.addMove(7, 7, Game.X);
+    board.addMove(7, 8, Game.X);
+    board.addMove(8, 9, Game.X);
+    board.addMove(9, 9, Game.X);
+    board.addMove(3, 3, Game.O);
+    board.addMove(12, 12, Game.O);
+
+    assertArrayEquals(new int[]{7, 9}, solver.findWin(board, playerX, playerO));
+    assertNull(new ThreatSolver(10000, 16, 0).findWin(board, playerX, playerO));
+  }
+
+  /**
+   * Test that the search stops at its node budget.
+   */
+  @Test
+  public void testNodeBudget() {
+    board.addMove(7, 7, Game.X);
+    board.addMove(7, 8, Game.X);
+    board.addMove(8, 9, Game.X);
+    board.addMove(9, 9, Game.X);
+    ThreatSolver smallSolver = new ThreatSolver(3, 16, 4);
+    assertNull(smallSolver.findWin(board, playerX, playerO));
+    assertEquals(3, smallSolver.getNodeCount());
+    assertEquals(4, board.getMoveCount());
+  }
+}
@@ -0,0 +1,202 @@
+package caro;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import caro.AI.ConcurrentQTable;
+import caro.AI.ReplayBuffer;
+import caro.AI.TrainedAI;
+import caro.board.GameBoard;
+
+/**
+ * JUnit test class for TrainedAI.
+ */
+public class TrainedAITest {
+  private GameBoard board = new GameBoard(9);
+  private TrainedAI ai = new TrainedAI(9);
+  private double delta = 0.0001;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Set up test case.
+   */
+  @Before
+  public void setUp() {
+    board.initializeBoard();
+    board.addMove(4, 4, Game.X);
+    board.addMove(4, 5, Game.O);
+  }
+
+  /**
+   * Test for bad construction of TrainedAI object.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullQTable() {
+    new TrainedAI(9, null);
+  }
+
+  /**
+   * Test that AIs built on one table share what they learn.
+   */
+  @Test
+  public void testSharedQTable() {
+    ConcurrentQTable table = new ConcurrentQTable();
+    TrainedAI learner = new TrainedAI(9, table);
+    TrainedAI other = new TrainedAI(9, table);
+    learner.updateqValue(board, new int[]{3, 4}, 0, 1.0, 0);
+    assertEquals(0.5, other.getqValue(board, new int[]{3, 4}), delta);
+    assertEquals(0.5, other.maxFutureRewards(board), delta);
+  }
+
+  /**
+   * Test that update() is seen by getqValue() for any array holding the same move, and for any
+   * board holding the same position.
+   */
+  @Test
+  public void testUpdate() {
+    GameBoard newState = new GameBoard(board);
+    newState.addMove(3, 3, Game.X);
+    ai.update(board, new int[]{3, 3}, newState, 1.0);
+    assertEquals(0.5, ai.getqValue(board, new int[]{3, 3}), delta);
+    assertEquals(0, ai.getqValue(board, new int[]{3, 4}), delta);
+    assertEquals(0, ai.getqValue(newState, new int[]{3, 3}), delta);
+
+    GameBoard sameState = new GameBoard(9);
+    sameState.initializeBoard();
+    sameState.addMove(4, 5, Game.O);
+    sameState.addMove(4, 4, Game.X);
+    assertEquals(0.5, ai.getqValue(sameState, new int[]{3, 3}), delta);
+    assertEquals(1, ai.getQTable().getSize());
+  }
+
+  /**
+   * Test that a value learned for a state is found for its rotations and reflections, with the
+   * move mapped along.
+   */
+  @Test
+  public void testSymmetries() {
+    ai.updateqValue(board, new int[]{3, 4}, 0, 1.0, 0);
+    // rotated by 90 degrees: (r, c) -> (c, 8 - r)
+    GameBoard rotated = new GameBoard(9);
+    rotated.initializeBoard();
+    rotated.addMove(4, 4, Game.X);
+    rotated.addMove(5, 4, Game.O);
+    assertEquals(0.5, ai.getqValue(rotated, new int[]{4, 5}), delta);
+    assertEquals(0, ai.getqValue(rotated, new int[]{3, 4}), delta);
+
+    // the position is its own mirror image in row 4, so (3, 4) and (5, 4) are the same move
+    assertEquals(0.5, ai.getqValue(board, new int[]{5, 4}), delta);
+    assertEquals(1, ai.getQTable().getSize());
+
+    TrainedAI plainAi = new TrainedAI(9);
+    plainAi.setUseSymmetries(false);
+    plainAi.updateqValue(board, new int[]{3, 4}, 0, 1.0, 0);
+    assertEquals(0.5, plainAi.getqValue(board, new int[]{3, 4}), delta);
+    assertEquals(0, plainAi.getqValue(rotated, new int[]{4, 5}), delta);
+    assertEquals(0, plainAi.getqValue(board, new int[]{5, 4}), delta);
+  }
+
+  /**
+   * Test that record() learns from a move as update() does, and leaves the board as it was.
+   */
+  @Test
+  public void testRecord() {
+    GameBoard newState = new GameBoard(board);
+    newState.addMove(3, 3, Game.X);
+    long hash = newState.getHash();
+    ai.record(newState, new int[]{3, 3}, 1.0);
+    assertEquals(0.5, ai.getqValue(board, new int[]{3, 3}), delta);
+    assertEquals(hash, newState.getHash());
+    assertEquals(3, newState.getMoveCount());
+
+    TrainedAI updatedAi = new TrainedAI(9);
+    updatedAi.update(board, new int[]{3, 3}, newState, 1.0);
+    assertEquals(updatedAi.getQTable().getSize(), ai.getQTable().getSize());
+  }
+
+  /**
+   * Test for record() with a move that is not the last move made on the board.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testRecordWrongMove() {
+    GameBoard newState = new GameBoard(board);
+    newState.addMove(3, 3, Game.X);
+    ai.record(newState, new int[]{4, 4}, 1.0);
+  }
+
+  /**
+   * Test that with a replay buffer, record() only stores transitions, and replay() learns from
+   * them.
+   */
+  @Test
+  public void testReplay() {
+    ai.setReplayBuffer(new ReplayBuffer(16, 9));
+    ai.replay(4);
+    assertEquals(0, ai.getQTable().getSize());
+
+    GameBoard newState = new GameBoard(board);
+    newState.addMove(3, 3, Game.X);
+    ai.record(newState, new int[]{3, 3}, 1.0);
+    assertEquals(1, ai.getReplayBuffer().getSize());
+    assertEquals(0, ai.getqValue(board, new int[]{3, 3}), delta);
+
+    // with a single transition stored, every sample is that transition
+    ai.replay(2);
+    assertEquals(0.75, ai.getqValue(board, new int[]{3, 3}), delta);
+    assertEquals(1, ai.getReplayBuffer().getSize());
+  }
+
+  /**
+   * Test for replay() with bad batch size.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadBatchSize() {
+    ai.setReplayBuffer(new ReplayBuffer(9));
+    ai.replay(-1);
+  }
+
+  /**
+   * Test for setReplayBuffer() with a buffer for another board dimension.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadReplayBuffer() {
+    ai.setReplayBuffer(new ReplayBuffer(15));
+  }
+
+  /**
+   * Test maxFutureRewards().
+   */
+  @Test
+  public void testMaxFutureRewards() {
+    assertEquals(0, ai.maxFutureRewards(board), delta);
+    ai.updateqValue(board, new int[]{3, 3}, 0, -1.0, 0);
+    assertEquals(0, ai.maxFutureRewards(board), delta);
+    ai.updateqValue(board, new int[]{5, 5}, 0, 1.0, 0);
+    assertEquals(0.5, ai.maxFutureRewards(board), delta);
+  }
+
+  /**
+   * Test that a saved Q-table is found again by an AI that loads it.
+   */
+  @Test
+  public void testSaveAndLoadQTable() throws IOException {
+    ai.updateqValue(board, new int[]{3, 4}, 0, 1.0, 0);
+    Path file = folder.newFile("ai.qtable").toPath();
+    ai.saveQTable(file);
+
+    TrainedAI loadedAi = new TrainedAI(9);
+    loadedAi.loadQTable(file);
+    assertEquals(0.5, loadedAi.getqValue(board, new int[]{3, 4}), delta);
+    assertEquals(0.5, loadedAi.getqValue(board, new int[]{5, 4}), delta);
+    assertEquals(1, loadedAi.getQTable().getSize());
+  }
+}
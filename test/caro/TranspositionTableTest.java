@@ -0,0 +1,138 @@
+package caro;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import caro.AI.TranspositionTable;
+import caro.AI.TranspositionTable.ReplacementPolicy;
+
+/**
+ * JUnit test class for TranspositionTable.
+ */
+public class TranspositionTableTest {
+  private TranspositionTable table;
+  private TranspositionTable.Entry entry = new TranspositionTable.Entry();
+  private double delta = 0.0001;
+
+  /**
+   * Set up test case.
+   */
+  @Before
+  public void setUp() {
+    table = new TranspositionTable(16, ReplacementPolicy.DEPTH_PREFERRED);
+  }
+
+  /**
+   * Test for bad construction of TranspositionTable object.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadConstruction() {
+    new TranspositionTable(0, ReplacementPolicy.ALWAYS_REPLACE);
+  }
+
+  /**
+   * Test getCapacity().
+   */
+  @Test
+  public void testGetCapacity() {
+    assertEquals(16, table.getCapacity());
+    assertEquals(32, new TranspositionTable(17, ReplacementPolicy.ALWAYS_REPLACE).getCapacity());
+  }
+
+  /**
+   * Test store() and probe().
+   */
+  @Test
+  public void testStoreAndProbe() {
+    assertFalse(table.probe(5L, entry));
+    table.store(5L, 3, TranspositionTable.LOWER_BOUND, 0.25,
+            TranspositionTable.packMove(new int[]{7, 9}));
+
+    assertTrue(table.probe(5L, entry));
+    assertEquals(3, entry.getDepth());
+    assertEquals(TranspositionTable.LOWER_BOUND, entry.getBound());
+    assertEquals(0.25, entry.getScore(), delta);
+    assertArrayEquals(new int[]{7, 9}, TranspositionTable.unpackMove(entry.getBestMove()));
+
+    table.store(6L, 0, TranspositionTable.EXACT, -4.0, TranspositionTable.NO_MOVE);
+    assertTrue(table.probe(6L, entry));
+    assertEquals(TranspositionTable.NO_MOVE, entry.getBestMove());
+    assertEquals(-4.0, entry.getScore(), delta);
+
+    // a different key mapping to the same index is not reported as a hit
+    assertFalse(table.probe(5L + 16, entry));
+
+    table.clear();
+    assertFalse(table.probe(5L, entry));
+  }
+
+  /**
+   * Test replacement policies.
+   */
+  @Test
+  public void testReplacementPolicy() {
+    table.store(1L, 4, TranspositionTable.EXACT, 0.5, TranspositionTable.NO_MOVE);
+    // shallower entry for another position does not evict deeper entry
+    table.store(17L, 1, TranspositionTable.EXACT, -0.5, TranspositionTable.NO_MOVE);
+    assertTrue(table.probe(1L, entry));
+    assertFalse(table.probe(17L, entry));
+    // same position is always updated
+    table.store(1L, 2, TranspositionTable.UPPER_BOUND, 0.1, TranspositionTable.NO_MOVE);
+    assertTrue(table.probe(1L, entry));
+    assertEquals(2, entry.getDepth());
+
+    // a deeper entry from an earlier search is still found, but no longer kept
+    table.store(1L, 4, TranspositionTable.EXACT, 0.5, TranspositionTable.NO_MOVE);
+    table.newSearch();
+    assertTrue(table.probe(1L, entry));
+    assertEquals(4, entry.getDepth());
+    table.store(17L, 1, TranspositionTable.EXACT, -0.5, TranspositionTable.NO_MOVE);
+    assertFalse(table.probe(1L, entry));
+    assertTrue(table.probe(17L, entry));
+    assertEquals(1, entry.getDepth());
+    // and the entry replacing it is kept against shallower entries of the new search
+    table.store(33L, 0, TranspositionTable.EXACT, 0.1, TranspositionTable.NO_MOVE);
+    assertTrue(table.probe(17L, entry));
+
+    TranspositionTable always = new TranspositionTable(16, ReplacementPolicy.ALWAYS_REPLACE);
+    always.store(1L, 4, TranspositionTable.EXACT, 0.5, TranspositionTable.NO_MOVE);
+    always.store(17L, 1, TranspositionTable.EXACT, -0.5, TranspositionTable.NO_MOVE);
+    assertFalse(always.probe(1L, entry));
+    assertTrue(always.probe(17L, entry));
+  }
+
+  /**
+   * Test that entries written concurrently by several threads are never read back mixed up.
+   */
+  @Test
+  public void testConcurrentAccess() throws InterruptedException {
+    TranspositionTable shared = new TranspositionTable(64, ReplacementPolicy.ALWAYS_REPLACE);
+    Thread[] threads = new Thread[4];
+    boolean[] failed = new boolean[threads.length];
+    for (int t = 0; t < threads.length; t++) {
+      final int id = t;
+      threads[t] = new Thread(() -> {
+        TranspositionTable.Entry read = new TranspositionTable.Entry();
+        for (int i = 0; i < 200000; i++) {
+          long key = (i * 31L + id) % 1024;
+          // every field is derived from the key, so a mixed entry is detected
+          shared.store(key, (int) (key % 100), TranspositionTable.EXACT, key, (int) key);
+          long other = (i * 17L) % 1024;
+          if (shared.probe(other, read) && ((read.getScore() != other)
+                  || (read.getBestMove() != other) || (read.getDepth() != other % 100))) {
+            failed[id] = true;
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (boolean fail : failed) {
+      assertFalse(fail);
+    }
+  }
+}